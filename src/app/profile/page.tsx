@@ -47,7 +47,7 @@ declare global {
       chooseProfileImage: () => void;
     };
     window: any;
-    updateProfileImage?: (imageDataUrl: string) => void;
+    updateProfileImage?: (imageUrl: string) => void;
   }
 }
 
@@ -184,10 +184,10 @@ export default function ProfilePage() {
 
   useEffect(() => {
     // Define the callback function that the native app will call
-    window.updateProfileImage = async (imageDataUrl: string) => {
+    window.updateProfileImage = async (imageUrl: string) => {
       try {
-        // Since we get a data URL, we need to convert it to a Blob/File to resize it
-        const response = await fetch(imageDataUrl);
+        // The native app passes a short-lived local URL; fetch it as a Blob/File to resize it
+        const response = await fetch(imageUrl);
         const blob = await response.blob();
         const file = new File([blob], 'profile.jpg', { type: 'image/jpeg' });
         const compressedDataUrl = await resizeImage(file);
@@ -28,7 +28,7 @@ declare global {
       chooseProfileImage: () => void;
       signInWithGoogle: () => void;
     };
-    updateProfileImage?: (imageDataUrl: string) => void;
+    updateProfileImage?: (imageUrl: string) => void;
     handleGoogleSignInFromNative?: (token: string) => Promise<any>;
   }
 }
@@ -48,9 +48,21 @@ export default function SignupPage() {
   // This effect handles the callback from the native Android app
   useEffect(() => {
     // Define the callback function that the native app will call for profile images
-    window.updateProfileImage = (imageDataUrl: string) => {
-      setPhotoDataUrl(imageDataUrl); // Store the raw data for submission
-      setPhotoPreview(imageDataUrl); // Update the preview
+    // The native app passes a short-lived local URL; read it into a data URL for submission
+    window.updateProfileImage = async (imageUrl: string) => {
+      try {
+        const blob = await (await fetch(imageUrl)).blob();
+        const imageDataUrl = await new Promise<string>((resolve, reject) => {
+          const reader = new FileReader();
+          reader.onload = () => resolve(reader.result as string);
+          reader.onerror = () => reject(reader.error);
+          reader.readAsDataURL(blob);
+        });
+        setPhotoDataUrl(imageDataUrl); // Store the raw data for submission
+        setPhotoPreview(imageDataUrl); // Update the preview
+      } catch (error) {
+        console.error('Error reading native image:', error);
+      }
     };
     
     // A function to handle the native sign-in result and redirect
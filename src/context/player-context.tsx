@@ -10,6 +10,7 @@ import { searchYoutube } from '@/ai/flows/search-youtube-flow';
 import { onAuthChange } from '@/lib/auth';
 import { getPlaybackQuality, savePlaybackQuality } from '@/lib/preferences';
 import { getSearchHistory } from '@/lib/recommendations';
+import { useToast } from '@/hooks/use-toast';
 
 // Extend the window type to include our optional AndroidBridge and callbacks
 declare global {
@@ -21,11 +22,41 @@ declare global {
       seekTo: (positionInSeconds: number) => void;
       setSleepTimer: (durationInMillis: number) => void;
       updatePlaybackQueue: (playlistJson: string, currentIndex: number) => void;
+      appendToQueue?: (songsJson: string) => void;
+      insertIntoQueue?: (songsJson: string, index: number) => void;
+      removeFromQueue?: (index: number) => void;
+      moveInQueue?: (fromIndex: number, toIndex: number) => void;
+      setGaplessPlayback?: (enabled: boolean) => void;
+      getPlaybackMetrics?: () => string;
+      setSavedPlaylists?: (playlistsJson: string) => void;
+      getLibraryPlaylists?: (source: string, offset: number, limit: number) => string;
+      requestLibraryPlaylists?: (source: string, offset: number, requestId: number) => void;
+      getLibraryTracks?: (offset: number, limit: number) => string;
+      getPlayHistory?: (offset: number, limit: number) => string;
+      putLibraryPlaylists?: (source: string, playlistsJson: string) => void;
     };
-    updateFromNative: (state: { isPlaying?: boolean; currentTime?: number; duration?: number; newSongIndex?: number; fetchMore?: boolean; }) => void;
+    updateFromNative: (state: NativeUpdate) => void;
   }
 }
 
+// A queue the native service switched to on its own, e.g. when Android Auto plays from a saved playlist
+interface NativeSong {
+  videoId: string;
+  title: string;
+  artist: string;
+  thumbnailUrl: string;
+}
+
+interface NativeUpdate {
+  isPlaying?: boolean;
+  currentTime?: number;
+  duration?: number;
+  newSongIndex?: number;
+  fetchMore?: boolean;
+  quarantined?: string[];
+  queue?: NativeSong[];
+}
+
 interface PlayerContextType {
   currentTrack: Track | null;
   currentPlaylist: Playlist | null;
@@ -133,6 +164,7 @@ export const PlayerProvider = ({ children }: { children: ReactNode }) => {
   const playerRef = useRef<YouTube | null>(null);
   const videoPlayerRef = useRef<YouTube | null>(null);
   const queueRef = useRef(queue);
+  const { toast } = useToast();
   const [showVideoInSheet, setShowVideoInSheet] = useState(false);
 
 
@@ -201,7 +233,18 @@ export const PlayerProvider = ({ children }: { children: ReactNode }) => {
                 setContinuationQuery((results as any).continuationQuery);
             }
 
-            if (isNativePlayback && window.Android?.startPlayback) {
+            if (isNativePlayback && window.Android?.appendToQueue) {
+                // Only ship the new page; the native queue keeps playing untouched
+                if (newTracks.length > 0) {
+                    const songsForNative = newTracks.map(t => ({
+                        videoId: t.youtubeVideoId,
+                        title: t.title,
+                        artist: t.artist,
+                        thumbnailUrl: `https://img.youtube.com/vi/${t.youtubeVideoId}/mqdefault.jpg`,
+                    }));
+                    window.Android.appendToQueue(JSON.stringify(songsForNative));
+                }
+            } else if (isNativePlayback && window.Android?.startPlayback) {
                 const currentIndex = newQueue.findIndex(t => t.id === currentTrack?.id);
                 if (currentIndex !== -1) {
                     const playlistForNative = newQueue.map(t => ({
@@ -239,7 +282,7 @@ export const PlayerProvider = ({ children }: { children: ReactNode }) => {
   }, [currentTrack, queue, currentPlaylist, searchQuery, fetchMoreTracks]);
 
 
-  const handleNativeUpdate = useCallback((state: { isPlaying?: boolean; currentTime?: number; duration?: number; newSongIndex?: number; fetchMore?: boolean; }) => {
+  const handleNativeUpdate = useCallback((state: NativeUpdate) => {
       if (typeof state.isPlaying === 'boolean') {
           setIsPlaying(state.isPlaying);
       }
@@ -251,6 +294,25 @@ export const PlayerProvider = ({ children }: { children: ReactNode }) => {
         setCurrentTime(state.currentTime);
       }
   
+      // Adopt the service's queue before resolving newSongIndex, which now indexes into it
+      if (state.queue) {
+          const adopted: Track[] = state.queue.map(song => getTrackById(song.videoId) ?? {
+              id: song.videoId,
+              youtubeVideoId: song.videoId,
+              title: song.title,
+              artist: song.artist,
+              album: '',
+              artwork: song.thumbnailUrl,
+              duration: 0,
+          });
+          queueRef.current = adopted;
+          setQueueState(adopted);
+          setCurrentPlaylist(null);
+          setSearchQuery(null);
+          setContinuationToken(null);
+          setContinuationQuery(null);
+      }
+
       const currentQueue = queueRef.current;
       if (typeof state.newSongIndex === 'number' && state.newSongIndex < currentQueue.length) {
           const newTrack = currentQueue[state.newSongIndex];
@@ -264,7 +326,20 @@ export const PlayerProvider = ({ children }: { children: ReactNode }) => {
       if (state.fetchMore) {
           fetchMoreTracks();
       }
-  }, [fetchMoreTracks]);
+
+      // Videos that can never play here (removed, embedding off); the native player already skips them
+      if (state.quarantined && state.quarantined.length > 0) {
+          const skipped = state.quarantined
+              .map(videoId => queueRef.current.find(t => t.youtubeVideoId === videoId))
+              .filter(Boolean) as Track[];
+          if (skipped.length > 0) {
+              toast({
+                  title: skipped.length === 1 ? 'Skipped an unavailable track' : `Skipped ${skipped.length} unavailable tracks`,
+                  description: skipped.length === 1 ? `"${skipped[0].title}" can't be played.` : undefined,
+              });
+          }
+      }
+  }, [fetchMoreTracks, getTrackById, toast]);
 
   useEffect(() => {
     setIsMounted(true);
@@ -364,6 +439,23 @@ export const PlayerProvider = ({ children }: { children: ReactNode }) => {
     updateMediaSession();
   }, [currentTrack, isNativePlayback]);
 
+  // Mirror the library into the native browse tree (Android Auto, Wear) while the service is running
+  useEffect(() => {
+    if (!isNativePlayback || !window.Android?.setSavedPlaylists) return;
+    const playlistsForNative = userPlaylists.map(p => ({
+      id: p.id,
+      name: p.name,
+      songs: (p.trackIds.map(id => getTrackById(id)).filter(Boolean) as Track[])
+        .map(t => ({
+          videoId: t.youtubeVideoId,
+          title: t.title,
+          artist: t.artist,
+          thumbnailUrl: `https://img.youtube.com/vi/${t.youtubeVideoId}/mqdefault.jpg`,
+        })),
+    }));
+    window.Android.setSavedPlaylists(JSON.stringify(playlistsForNative));
+  }, [userPlaylists, isNativePlayback]);
+
 
   const playYoutubeSongInApp = (trackToPlay: Track, currentQueue: Track[]) => {
       const currentIndex = currentQueue.findIndex(t => t.id === trackToPlay.id);
@@ -1,6 +1,6 @@
 
 'use client';
-import React, { createContext, useContext, useState, useEffect, ReactNode, useMemo } from 'react';
+import React, { createContext, useContext, useState, useEffect, ReactNode, useMemo, useRef } from 'react';
 import type { User, UserData, Playlist, Track, Channel } from '@/lib/types';
 import { tracks as mockTracks } from '@/lib/mock-data';
 import { onAuthChange } from '@/lib/auth';
@@ -10,6 +10,7 @@ import { removeTrackFromPublicPlaylist } from '@/ai/flows/update-playlist-flow';
 import { deletePublicPlaylist } from '@/ai/flows/delete-playlist-flow';
 import { useToast } from '@/hooks/use-toast';
 import { getCachedSinglePlaylist } from '@/lib/recommendations';
+import { readNativeHistory, readNativePlaylists, readNativeTracks, streamNativePlaylists, writeNativePlaylists } from '@/lib/native-library';
 import { DEFAULT_PLAYLIST_COVER } from '@/lib/constants';
 
 const LIKED_SONGS_PLAYLIST_ID = 'liked-songs';
@@ -66,19 +67,41 @@ const getInitialTrackCache = (): CachedTracks => {
         return acc;
     }, {} as CachedTracks);
 
+    // Tracks the native store kept, under whatever the page still has of its own
+    const nativeTracks = readNativeTracks().reduce((acc, track) => {
+        acc[track.id] = track;
+        return acc;
+    }, {} as CachedTracks);
+
     if (typeof window === 'undefined' || !window.localStorage) {
-        return initialMockTracks;
+        return { ...initialMockTracks, ...nativeTracks };
     }
     try {
       const storedTracks = window.localStorage.getItem('trackCache');
       const parsedTracks = storedTracks ? JSON.parse(storedTracks) : {};
-      return { ...initialMockTracks, ...parsedTracks };
+      return { ...initialMockTracks, ...nativeTracks, ...parsedTracks };
     } catch (error) {
       console.error("Error reading track cache from localStorage:", error);
-      return initialMockTracks;
+      return { ...initialMockTracks, ...nativeTracks };
     }
 }
 
+// Plays the native player recorded after the page's own latest one (Android Auto, the notification)
+// go to the front of recentlyPlayed. Fills their playedAt into cache as it goes.
+const withNativeHistory = (data: UserData, cache: CachedTracks): UserData => {
+  const latest = data.recentlyPlayed.length > 0 ? cache[data.recentlyPlayed[0]]?.playedAt ?? 0 : 0;
+  const newer: string[] = [];
+  for (const play of readNativeHistory()) {
+    if (play.playedAt <= latest) break;
+    if (!play.track || newer.includes(play.track.id)) continue;
+    cache[play.track.id] = { ...(cache[play.track.id] ?? play.track), playedAt: play.playedAt };
+    newer.push(play.track.id);
+  }
+  if (newer.length === 0) return data;
+  const rest = data.recentlyPlayed.filter(id => !newer.includes(id));
+  return { ...data, recentlyPlayed: [...newer, ...rest].slice(0, 500) };
+};
+
 export const UserDataProvider = ({ children }: { children: ReactNode }) => {
   const [currentUser, setCurrentUser] = useState<User | null>(null);
   const [userData, setUserData] = useState<UserData>({ likedSongs: [], playlists: [], recentlyPlayed: [], channels: [] });
@@ -88,37 +111,88 @@ export const UserDataProvider = ({ children }: { children: ReactNode }) => {
   const [likeAnimationTrigger, setLikeAnimationTrigger] = useState(0);
   const { toast } = useToast();
 
+  // Set while the user's playlists are still streaming back from the native store
+  const userPlaylistsRestoring = useRef(false);
+
   useEffect(() => {
+    let stopRestore = () => {};
     const unsubscribe = onAuthChange((user) => {
+      stopRestore();
+      userPlaylistsRestoring.current = false;
       setCurrentUser(user);
       if (user) {
-        setUserData(getInitialUserData(user.id));
-        setTrackCache(getInitialTrackCache());
+        const cache = getInitialTrackCache();
+        const initial = withNativeHistory(getInitialUserData(user.id), cache);
+        // The page lost its storage but the native store didn't: paint what it has
+        if (initial.playlists.length === 0) {
+          const stored = readNativePlaylists('user');
+          initial.playlists = stored.playlists;
+          if (!stored.complete) {
+            userPlaylistsRestoring.current = true;
+            stopRestore = streamNativePlaylists('user', stored.playlists.length, (page, done) => {
+              if (done) userPlaylistsRestoring.current = false;
+              setUserData(prev => ({
+                ...prev,
+                playlists: [...prev.playlists, ...page.filter(p => !prev.playlists.some(q => q.id === p.id))],
+              }));
+            });
+          }
+        }
+        setUserData(initial);
+        setTrackCache(cache);
       } else {
         setUserData({ likedSongs: [], playlists: [], recentlyPlayed: [], channels: [] });
       }
        setIsInitialized(true);
     });
-    return () => unsubscribe();
+    return () => {
+      stopRestore();
+      unsubscribe();
+    };
   }, []);
 
   useEffect(() => {
     if (!isInitialized) return;
 
+    // In the Android app, show the last known community playlists from disk until Firestore answers:
+    // the first page right away, the rest as the store streams it in
+    let stopNativeStream = () => {};
+    const cachedCommunity = readNativePlaylists('community');
+    if (cachedCommunity.playlists.length > 0) {
+      setCommunityPlaylists(cachedCommunity.playlists);
+      if (!cachedCommunity.complete) {
+        stopNativeStream = streamNativePlaylists('community', cachedCommunity.playlists.length, (page) => {
+          setCommunityPlaylists(prev => [...prev, ...page]);
+        });
+      }
+    }
+
     const q = query(collection(db, "communityPlaylists"), orderBy("createdAt", "desc"));
     const unsubscribe = onSnapshot(q, (querySnapshot) => {
+      stopNativeStream();
       const playlists: Playlist[] = [];
       querySnapshot.forEach((doc) => {
         playlists.push({ ...doc.data(), id: doc.id } as Playlist);
       });
       setCommunityPlaylists(playlists);
+      // Cache hits are served from the local Firestore cache and say nothing new
+      if (!querySnapshot.metadata.fromCache) writeNativePlaylists('community', playlists);
     }, (error) => {
         console.error("Firestore snapshot error:", error);
     });
 
-    return () => unsubscribe();
+    return () => {
+      stopNativeStream();
+      unsubscribe();
+    };
   }, [isInitialized]);
 
+  useEffect(() => {
+    // Mirroring a half-restored list would cut the store down to it
+    if (!isInitialized || !currentUser || userPlaylistsRestoring.current) return;
+    writeNativePlaylists('user', userData.playlists);
+  }, [userData.playlists, currentUser, isInitialized]);
+
   useEffect(() => {
     if (!isInitialized || !currentUser) return;
     if (typeof window !== 'undefined' && window.localStorage) {
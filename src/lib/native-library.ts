@@ -0,0 +1,119 @@
+import type { Playlist, Track } from './types';
+
+// Mirror of the Android app's on-device library (LibraryStore). Everything here is a
+// no-op in a plain browser, so callers don't need to check for the bridge.
+
+export type NativeLibrarySource = 'user' | 'community';
+
+// One page is read synchronously before the first render; the rest streams in afterwards
+const FIRST_PAGE_SIZE = 20;
+
+interface PlaylistPage {
+    total: number;
+    playlists: Playlist[];
+}
+
+export interface NativePlaylistRead {
+    playlists: Playlist[];
+    // False if the store holds more than the first page; streamNativePlaylists fetches the rest
+    complete: boolean;
+}
+
+// Single bounded reads: one query each, cheap enough to run before the first render
+const TRACK_PAGE_SIZE = 200;
+const HISTORY_PAGE_SIZE = 100;
+
+// A play the native player recorded; track is there once the store has matched it
+export interface NativePlay {
+    videoId: string;
+    playedAt: number;
+    track?: Track;
+}
+
+declare global {
+    interface Window {
+        onNativeLibraryPage?: (requestId: number, offset: number, page: PlaylistPage) => void;
+    }
+}
+
+type PageHandler = (offset: number, page: PlaylistPage) => void;
+const pageHandlers = new Map<number, PageHandler>();
+let nextRequestId = 1;
+
+export const hasNativeLibrary = (): boolean =>
+    typeof window !== 'undefined' && !!window.Android?.getLibraryPlaylists;
+
+// Synchronous, but bounded to one small page so a large library can't hold up first paint
+export const readNativePlaylists = (source: NativeLibrarySource): NativePlaylistRead => {
+    if (!hasNativeLibrary()) return { playlists: [], complete: true };
+    try {
+        const page: PlaylistPage = JSON.parse(window.Android!.getLibraryPlaylists!(source, 0, FIRST_PAGE_SIZE));
+        return { playlists: page.playlists, complete: page.playlists.length >= page.total };
+    } catch (error) {
+        console.error("Error reading playlists from the native library:", error);
+        return { playlists: [], complete: true };
+    }
+};
+
+// The most recently stored tracks, e.g. to resolve playlist trackIds when the page's own cache is gone
+export const readNativeTracks = (): Track[] => {
+    if (!hasNativeLibrary() || !window.Android?.getLibraryTracks) return [];
+    try {
+        return JSON.parse(window.Android.getLibraryTracks(0, TRACK_PAGE_SIZE)).tracks;
+    } catch (error) {
+        console.error("Error reading tracks from the native library:", error);
+        return [];
+    }
+};
+
+// Newest first; includes plays the page never saw, such as ones started from Android Auto
+export const readNativeHistory = (): NativePlay[] => {
+    if (!hasNativeLibrary() || !window.Android?.getPlayHistory) return [];
+    try {
+        return JSON.parse(window.Android.getPlayHistory(0, HISTORY_PAGE_SIZE)).history;
+    } catch (error) {
+        console.error("Error reading play history from the native library:", error);
+        return [];
+    }
+};
+
+// Streams source's playlists from offset on; the store reads them off the JS thread and posts
+// each page back. onPage gets every page in order, done on the last. Returns a cancel function.
+export const streamNativePlaylists = (
+    source: NativeLibrarySource,
+    offset: number,
+    onPage: (playlists: Playlist[], done: boolean) => void,
+): (() => void) => {
+    if (!hasNativeLibrary() || !window.Android?.requestLibraryPlaylists) {
+        onPage([], true);
+        return () => {};
+    }
+    const requestId = nextRequestId++;
+    pageHandlers.set(requestId, (pageOffset, page) => {
+        const done = page.playlists.length === 0 || pageOffset + page.playlists.length >= page.total;
+        if (done) pageHandlers.delete(requestId);
+        onPage(page.playlists, done);
+    });
+    window.onNativeLibraryPage = (id, pageOffset, page) => pageHandlers.get(id)?.(pageOffset, page);
+    window.Android.requestLibraryPlaylists(source, offset, requestId);
+    return () => {
+        pageHandlers.delete(requestId);
+    };
+};
+
+export const writeNativePlaylists = (source: NativeLibrarySource, playlists: Playlist[]) => {
+    if (!hasNativeLibrary() || !window.Android?.putLibraryPlaylists) return;
+    // Only what the store keeps; Firestore timestamps and UI flags stay out of the payload
+    const payload = playlists.map(p => ({
+        id: p.id,
+        name: p.name,
+        description: p.description,
+        coverArt: p.coverArt,
+        public: p.public,
+        owner: p.owner,
+        ownerId: p.ownerId,
+        trackIds: p.trackIds,
+        tracks: p.tracks,
+    }));
+    window.Android.putLibraryPlaylists(source, JSON.stringify(payload));
+};
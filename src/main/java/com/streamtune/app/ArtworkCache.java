@@ -0,0 +1,206 @@
+package com.streamtune.app;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.util.Log;
+import android.util.LruCache;
+
+import androidx.annotation.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * Two-tier artwork cache keyed by the song's thumbnail URL.
+ * Decoded bitmaps live in a byte-bounded memory LRU; the encoded bytes are kept
+ * on disk under the app cache dir (a DiskLru) so a memory miss never needs the network.
+ */
+public class ArtworkCache {
+
+    private static final String TAG = "ArtworkCache";
+    private static final String DIR_NAME = "artwork";
+    // Entries are this, fetchedAt, etag, Last-Modified, then the image bytes.
+    // Bare images from before the header read as misses and age out.
+    private static final int MAGIC = 0x53544152; // "STAR"
+
+    /** How old a disk entry may get before it is worth a conditional request. */
+    private static final long REVALIDATE_AFTER_MS = 24L * 60 * 60 * 1000;
+
+    /** HTTP validators for a disk entry, kept in the entry's header. */
+    public static final class Validators {
+        @Nullable public final String etag;
+        @Nullable public final String lastModified;
+        public final long fetchedAt;
+
+        Validators(@Nullable String etag, @Nullable String lastModified, long fetchedAt) {
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.fetchedAt = fetchedAt;
+        }
+
+        public boolean isStale() {
+            return System.currentTimeMillis() - fetchedAt > REVALIDATE_AFTER_MS;
+        }
+    }
+
+    private final LruCache<String, Bitmap> memoryCache;
+    private final DiskLru disk;
+    // Only URLs whose bytes were replaced are here. Values never repeat, so one that
+    // falls out reads as 0 and a decode that started before still doesn't match
+    private final LruCache<String, Long> generations = new LruCache<>(128);
+    private long nextGeneration = 1;
+
+    public ArtworkCache(Context context, int maxMemoryBytes, long maxDiskBytes) {
+        this.memoryCache = new LruCache<String, Bitmap>(maxMemoryBytes) {
+            @Override
+            protected int sizeOf(String key, Bitmap value) {
+                return value.getAllocationByteCount();
+            }
+        };
+        this.disk = new DiskLru(new File(context.getCacheDir(), DIR_NAME), maxDiskBytes);
+    }
+
+    /** Default sizing: 1/16 of the heap for bitmaps (capped at 8 MB) and 20 MB on disk. */
+    public static ArtworkCache create(Context context) {
+        int memory = (int) Math.min(Runtime.getRuntime().maxMemory() / 16, 8L * 1024 * 1024);
+        return new ArtworkCache(context, memory, 20L * 1024 * 1024);
+    }
+
+    @Nullable
+    public Bitmap getBitmap(String url) {
+        return memoryCache.get(url);
+    }
+
+    /**
+     * Take this before reading the bytes to decode, and hand it to putBitmap: if the
+     * bytes were replaced in between, the decode is of the old image and is dropped.
+     */
+    public long generation(String url) {
+        synchronized (generations) {
+            Long generation = generations.get(url);
+            return generation != null ? generation : 0;
+        }
+    }
+
+    public void putBitmap(String url, Bitmap bitmap, long generation) {
+        if (url == null || bitmap == null) return;
+        synchronized (generations) {
+            if (generation(url) == generation) memoryCache.put(url, bitmap);
+        }
+    }
+
+    /** Drops the decoded copy after the bytes behind it changed, along with any decode still in flight. */
+    public void removeBitmap(String url) {
+        synchronized (generations) {
+            generations.put(url, nextGeneration++);
+            memoryCache.remove(url);
+        }
+    }
+
+    /** Reads the encoded image from disk, or null on a miss. Call off the main thread. */
+    @Nullable
+    public synchronized byte[] getBytes(String url) {
+        File file = disk.file(url);
+        if (!file.isFile()) return null;
+        byte[] data = readBody(file);
+        // Touch so eviction stays least-recently-used rather than least-recently-written
+        if (data != null) DiskLru.touch(file);
+        return data;
+    }
+
+    /**
+     * Stores the encoded image on disk along with its validators (either may be null)
+     * and evicts the oldest entries past the size cap.
+     */
+    public synchronized void putBytes(String url, byte[] data, @Nullable String etag, @Nullable String lastModified) {
+        if (url == null || data == null || data.length == 0) return;
+        write(url, data, etag, lastModified);
+    }
+
+    /**
+     * Records the validators a 304 confirmed and restarts the entry's revalidation clock;
+     * null for both drops them. Rewrites the entry, so a changed etag can't outgrow the header.
+     */
+    public synchronized void putValidators(String url, @Nullable String etag, @Nullable String lastModified) {
+        byte[] data = readBody(disk.file(url));
+        if (data != null) write(url, data, etag, lastModified);
+    }
+
+    /** Validators for a disk entry, or null if there is none or the server sent none. */
+    @Nullable
+    public synchronized Validators getValidators(String url) {
+        File file = disk.file(url);
+        if (!file.isFile()) return null;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            Validators validators = readHeader(in);
+            return validators.etag == null && validators.lastModified == null ? null : validators;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private void write(String url, byte[] data, @Nullable String etag, @Nullable String lastModified) {
+        if (!disk.ensureDir()) return;
+        File file = disk.file(url);
+        File tmp = disk.tempFor(file);
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+            out.writeInt(MAGIC);
+            out.writeLong(System.currentTimeMillis());
+            out.writeUTF(etag != null ? etag : "");
+            out.writeUTF(lastModified != null ? lastModified : "");
+            out.write(data);
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to write cached artwork", e);
+            tmp.delete();
+            return;
+        }
+        disk.commit(tmp, file);
+    }
+
+    @Nullable
+    private static byte[] readBody(File file) {
+        if (!file.isFile()) return null;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            readHeader(in);
+            ByteArrayOutputStream body = new ByteArrayOutputStream((int) file.length());
+            byte[] buffer = new byte[8192];
+            int n;
+            while ((n = in.read(buffer)) != -1) body.write(buffer, 0, n);
+            return body.size() > 0 ? body.toByteArray() : null;
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to read cached artwork", e);
+            return null;
+        }
+    }
+
+    private static Validators readHeader(DataInputStream in) throws IOException {
+        if (in.readInt() != MAGIC) throw new IOException("Bad magic");
+        long fetchedAt = in.readLong();
+        String etag = in.readUTF();
+        String lastModified = in.readUTF();
+        return new Validators(etag.isEmpty() ? null : etag, lastModified.isEmpty() ? null : lastModified, fetchedAt);
+    }
+
+    // ---- Memory pressure: driven by the service's ResourceManager registration ----
+
+    public void clearMemory() {
+        memoryCache.evictAll();
+    }
+
+    /** Shrinks the memory tier to the given fraction of its budget (0 empties it). */
+    public void trimMemoryTo(float fraction) {
+        memoryCache.trimToSize((int) (memoryCache.maxSize() * fraction));
+    }
+
+    /** Bytes of decoded bitmaps held, as ResourceManager reports them. */
+    public int memorySize() {
+        return memoryCache.size();
+    }
+}
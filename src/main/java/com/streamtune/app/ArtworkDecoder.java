@@ -0,0 +1,106 @@
+package com.streamtune.app;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.net.Uri;
+import android.util.DisplayMetrics;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Decodes artwork at the size it will actually be shown instead of full resolution.
+ * Bounds are read first to pick a DecodePlan (inSampleSize and a final scale), JPEGs (no alpha)
+ * decode as RGB_565. Nothing is pooled through inBitmap: a cached bitmap can still be
+ * on its way into the session when the cache drops it, so reusing it is never safe here.
+ */
+public class ArtworkDecoder {
+
+    private static final String TAG = "ArtworkDecoder";
+    private static final int MAX_LOCK_SCREEN_PX = 512;
+
+    private final int maxDimension;
+    private final boolean allowRgb565;
+
+    public ArtworkDecoder(int maxDimension) {
+        this(maxDimension, true);
+    }
+
+    /** Pass false when the pixels get re-encoded, where RGB_565 banding would be baked in. */
+    public ArtworkDecoder(int maxDimension, boolean allowRgb565) {
+        this.maxDimension = maxDimension;
+        this.allowRgb565 = allowRgb565;
+    }
+
+    /** Sized for the larger of the notification large icon and the lock-screen / media-controls art. */
+    public static ArtworkDecoder forNotification(Context context) {
+        Resources res = context.getResources();
+        DisplayMetrics metrics = res.getDisplayMetrics();
+        int icon = Math.max(
+                res.getDimensionPixelSize(android.R.dimen.notification_large_icon_width),
+                res.getDimensionPixelSize(android.R.dimen.notification_large_icon_height));
+        int lockScreen = Math.min(Math.min(metrics.widthPixels, metrics.heightPixels), MAX_LOCK_SCREEN_PX);
+        return new ArtworkDecoder(Math.max(icon, lockScreen));
+    }
+
+    public int getMaxDimension() {
+        return maxDimension;
+    }
+
+    @Nullable
+    public Bitmap decode(byte[] data) {
+        if (data == null || data.length == 0) return null;
+        BitmapFactory.Options bounds = new BitmapFactory.Options();
+        bounds.inJustDecodeBounds = true;
+        BitmapFactory.decodeByteArray(data, 0, data.length, bounds);
+        if (bounds.outWidth <= 0 || bounds.outHeight <= 0) return null;
+
+        return finish(BitmapFactory.decodeByteArray(data, 0, data.length, buildOptions(bounds)));
+    }
+
+    /** Content URIs can't be rewound, so the stream is opened once for bounds and once for pixels. */
+    @Nullable
+    public Bitmap decode(ContentResolver resolver, Uri uri) throws IOException {
+        BitmapFactory.Options bounds = new BitmapFactory.Options();
+        bounds.inJustDecodeBounds = true;
+        try (InputStream in = resolver.openInputStream(uri)) {
+            BitmapFactory.decodeStream(in, null, bounds);
+        }
+        if (bounds.outWidth <= 0 || bounds.outHeight <= 0) return null;
+
+        try (InputStream in = resolver.openInputStream(uri)) {
+            return finish(BitmapFactory.decodeStream(in, null, buildOptions(bounds)));
+        }
+    }
+
+    // The inDensity/inTargetDensity scale leaves the target density on the bitmap;
+    // clear it so drawing code doesn't rescale it against the screen density again
+    @Nullable
+    private static Bitmap finish(@Nullable Bitmap bitmap) {
+        if (bitmap != null) bitmap.setDensity(Bitmap.DENSITY_NONE);
+        return bitmap;
+    }
+
+    private BitmapFactory.Options buildOptions(BitmapFactory.Options bounds) {
+        DecodePlan plan = DecodePlan.of(bounds.outWidth, bounds.outHeight, bounds.outMimeType, maxDimension, allowRgb565);
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inSampleSize = plan.sampleSize;
+        options.inPreferredConfig = plan.argb8888 ? Bitmap.Config.ARGB_8888 : Bitmap.Config.RGB_565;
+        if (plan.isScaled()) {
+            // Finish the downscale inside the decoder instead of a second createScaledBitmap pass
+            options.inScaled = true;
+            options.inDensity = plan.inDensity;
+            options.inTargetDensity = plan.inTargetDensity;
+        }
+        if (Log.isLoggable(TAG, Log.VERBOSE)) {
+            Log.v(TAG, bounds.outWidth + "x" + bounds.outHeight + " -> " + plan + ", max " + maxDimension);
+        }
+        return options;
+    }
+}
@@ -0,0 +1,159 @@
+package com.streamtune.app;
+
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Network side of artwork loading. Every request has connect and read timeouts and a
+ * cancellation token; cancelling disconnects the live connection, so a hung server
+ * releases its thread at once instead of when the read timeout fires. The artwork
+ * for the current track is one slot: submitting for a new track cancels the
+ * previous one. A small pool keeps one slow host from holding up everything else.
+ */
+public class ArtworkFetcher {
+
+    private static final String TAG = "ArtworkFetcher";
+    private static final int CONNECT_TIMEOUT_MS = 5000;
+    private static final int READ_TIMEOUT_MS = 10000;
+    private static final int MAX_PARALLEL = 2;
+    // Thumbnails are tens of KB; anything far larger is not artwork we want to hold
+    private static final int MAX_BYTES = 2 * 1024 * 1024;
+
+    public static final class Token {
+        private volatile boolean cancelled;
+        private volatile HttpURLConnection connection;
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        public void cancel() {
+            cancelled = true;
+            HttpURLConnection live = connection;
+            if (live != null) live.disconnect();
+        }
+    }
+
+    public static final class Response {
+        public final int code;
+        /** Null for 304. */
+        @Nullable public final byte[] body;
+        @Nullable public final String etag;
+        @Nullable public final String lastModified;
+        /** Time spent reading the body alone, after the headers arrived; 0 for 304. */
+        public final long transferNanos;
+
+        Response(int code, @Nullable byte[] body, @Nullable String etag, @Nullable String lastModified,
+                 long transferNanos) {
+            this.code = code;
+            this.body = body;
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.transferNanos = transferNanos;
+        }
+
+        public boolean isNotModified() {
+            return code == HttpURLConnection.HTTP_NOT_MODIFIED;
+        }
+    }
+
+    public interface Task {
+        void run(Token token) throws Exception;
+    }
+
+    private final ThreadPoolExecutor executor = new ThreadPoolExecutor(
+            MAX_PARALLEL, MAX_PARALLEL, 30L, TimeUnit.SECONDS, new LinkedBlockingQueue<>());
+    private Token trackToken; // main thread only
+
+    public ArtworkFetcher() {
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    /** Runs the artwork task for the track that just started and cancels the previous track's. Main thread. */
+    public void submitForTrack(Task task) {
+        cancelTrack();
+        Token token = new Token();
+        trackToken = token;
+        execute(token, task);
+    }
+
+    /** Cancels the current track's task, e.g. when the new track needs no fetch. Main thread. */
+    public void cancelTrack() {
+        if (trackToken != null) trackToken.cancel();
+        trackToken = null;
+    }
+
+    /** Work that isn't tied to the current track, such as revalidating a cached entry. */
+    public void submitBackground(Task task) {
+        execute(new Token(), task);
+    }
+
+    /**
+     * Fetches url, conditionally if validators are given. Returns null on any status
+     * other than 200/304, or if the token was cancelled before the response arrived.
+     */
+    @Nullable
+    public Response download(String url, @Nullable ArtworkCache.Validators validators, Token token) throws IOException {
+        if (token.isCancelled()) return null;
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        token.connection = connection;
+        try {
+            // cancel() may have run before the connection was published to it
+            if (token.isCancelled()) return null;
+            connection.setConnectTimeout(CONNECT_TIMEOUT_MS);
+            connection.setReadTimeout(READ_TIMEOUT_MS);
+            if (validators != null) {
+                if (validators.etag != null) connection.setRequestProperty("If-None-Match", validators.etag);
+                if (validators.lastModified != null) connection.setRequestProperty("If-Modified-Since", validators.lastModified);
+            }
+            int code = connection.getResponseCode();
+            String etag = connection.getHeaderField("ETag");
+            String lastModified = connection.getHeaderField("Last-Modified");
+            if (code == HttpURLConnection.HTTP_NOT_MODIFIED) return new Response(code, null, etag, lastModified, 0);
+            if (code != HttpURLConnection.HTTP_OK) return null;
+            // DNS, TLS and time to first byte are behind us; only the body says anything about bandwidth
+            long transferStart = System.nanoTime();
+            try (InputStream input = connection.getInputStream()) {
+                ByteArrayOutputStream out = new ByteArrayOutputStream(32 * 1024);
+                byte[] buffer = new byte[8192];
+                int n;
+                while ((n = input.read(buffer)) != -1) {
+                    if (token.isCancelled()) return null;
+                    out.write(buffer, 0, n);
+                    if (out.size() > MAX_BYTES) throw new IOException("Artwork larger than " + MAX_BYTES + " bytes");
+                }
+                return new Response(code, out.toByteArray(), etag, lastModified, System.nanoTime() - transferStart);
+            }
+        } finally {
+            token.connection = null;
+            connection.disconnect();
+        }
+    }
+
+    public void shutdown() {
+        cancelTrack();
+        executor.shutdownNow();
+    }
+
+    private void execute(Token token, Task task) {
+        executor.execute(() -> {
+            if (token.isCancelled()) return;
+            try {
+                task.run(token);
+            } catch (Exception e) {
+                // Cancelling disconnects mid-read, which surfaces here as an IOException
+                if (!token.isCancelled()) Log.w(TAG, "Artwork task failed", e);
+            }
+        });
+    }
+}
@@ -0,0 +1,336 @@
+package com.streamtune.app;
+
+import android.content.Context;
+import android.net.Uri;
+import android.os.Bundle;
+import android.os.Handler;
+import android.support.v4.media.MediaBrowserCompat;
+import android.support.v4.media.MediaBrowserCompat.MediaItem;
+import android.support.v4.media.MediaDescriptionCompat;
+import android.util.AtomicFile;
+import android.util.JsonWriter;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The MediaBrowser tree: current queue, recently played and saved playlists. Child
+ * lists are built once on the background handler and cached per parent until that
+ * parent is invalidated, so reconnecting browsers and page requests are served from
+ * memory. Recently played and saved playlists are persisted under filesDir/browse.
+ *
+ * Playable items use "parentId/videoId" as media id, so an id stays valid while
+ * recent reorders; see {@link #parentOf} and {@link #videoIdOf}.
+ */
+public class BrowseTree {
+
+    public static final String ROOT_ID = "media_root";
+    public static final String QUEUE_ID = "queue";
+    public static final String RECENT_ID = "recent";
+    public static final String PLAYLISTS_ID = "playlists";
+    public static final String PLAYLIST_PREFIX = "playlist:";
+
+    private static final String TAG = "BrowseTree";
+    private static final int MAX_RECENT = 50;
+
+    /** Told about parents whose children changed, so the service can notify subscribers. */
+    public interface Listener {
+        void onChildrenChanged(String parentId);
+    }
+
+    public interface Callback {
+        /** Null if the parent does not exist. */
+        void onChildren(@Nullable List<MediaItem> children);
+    }
+
+    private final Handler handler;
+    private final Listener listener;
+    private final AtomicFile recentFile;
+    private final AtomicFile playlistsFile;
+
+    // Guarded by this
+    private final Map<String, List<MediaItem>> cache = new HashMap<>();
+    private final List<Song> recent = new ArrayList<>();
+    private List<PlaylistParser.SavedPlaylist> playlists = new ArrayList<>();
+    private long version;
+    private boolean loaded;
+
+    public BrowseTree(Context context, Handler handler, Listener listener) {
+        File dir = new File(context.getFilesDir(), "browse");
+        // No mkdirs here: this runs on main, and AtomicFile.startWrite creates the directory itself
+        this.recentFile = new AtomicFile(new File(dir, "recent.json"));
+        this.playlistsFile = new AtomicFile(new File(dir, "playlists.json"));
+        this.handler = handler;
+        this.listener = listener;
+    }
+
+    /** Returns the requested page if that parent is cached, otherwise null. */
+    @Nullable
+    public synchronized List<MediaItem> getCached(String parentId, @Nullable Bundle options) {
+        List<MediaItem> all = cache.get(parentId);
+        return all != null ? page(all, options) : null;
+    }
+
+    /**
+     * Builds the children of parentId on the background handler and caches them. The
+     * queue is owned by the main thread, so for QUEUE_ID the caller passes a snapshot.
+     */
+    public void load(String parentId, @Nullable Bundle options, @Nullable List<Song> queueSnapshot, Callback callback) {
+        handler.post(() -> {
+            ensureLoaded();
+            long startVersion;
+            synchronized (this) {
+                startVersion = version;
+            }
+            List<MediaItem> all = build(parentId, queueSnapshot);
+            List<MediaItem> result = null;
+            synchronized (this) {
+                // An invalidation while building means this list may already be stale; send it, don't keep it
+                if (all != null && version == startVersion) cache.put(parentId, all);
+                if (all != null) result = page(all, options);
+            }
+            callback.onChildren(result);
+        });
+    }
+
+    public void invalidate(String parentId) {
+        synchronized (this) {
+            version++;
+            cache.remove(parentId);
+        }
+        listener.onChildrenChanged(parentId);
+    }
+
+    /** Moves a song to the front of recently played. */
+    public void onPlayed(Song song) {
+        if (song.videoId == null || song.videoId.isEmpty()) return;
+        handler.post(() -> {
+            ensureLoaded();
+            List<Song> snapshot;
+            synchronized (this) {
+                if (!recent.isEmpty() && song.videoId.equals(recent.get(0).videoId)) return;
+                for (int i = recent.size() - 1; i >= 0; i--) {
+                    if (song.videoId.equals(recent.get(i).videoId)) recent.remove(i);
+                }
+                recent.add(0, song);
+                if (recent.size() > MAX_RECENT) recent.subList(MAX_RECENT, recent.size()).clear();
+                snapshot = new ArrayList<>(recent);
+            }
+            invalidate(RECENT_ID);
+            write(recentFile, out -> writeSongs(out, snapshot));
+        });
+    }
+
+    /** Replaces the saved playlists. Must be called on the handler thread. */
+    public void setSavedPlaylists(Reader json) {
+        List<PlaylistParser.SavedPlaylist> parsed = PlaylistParser.parsePlaylists(json);
+        ensureLoaded();
+        List<String> stale = new ArrayList<>();
+        synchronized (this) {
+            for (String key : cache.keySet()) {
+                if (key.startsWith(PLAYLIST_PREFIX)) stale.add(key);
+            }
+            playlists = parsed;
+        }
+        invalidate(PLAYLISTS_ID);
+        for (String key : stale) invalidate(key);
+        write(playlistsFile, out -> {
+            out.beginArray();
+            for (PlaylistParser.SavedPlaylist playlist : parsed) {
+                out.beginObject();
+                out.name("id").value(playlist.id);
+                out.name("name").value(playlist.name);
+                out.name("songs");
+                writeSongs(out, playlist.songs);
+                out.endObject();
+            }
+            out.endArray();
+        });
+    }
+
+    /** Songs behind a non-queue parent, for playing one of its items; null if unknown. */
+    @Nullable
+    public synchronized List<Song> getSongs(String parentId) {
+        if (RECENT_ID.equals(parentId)) return new ArrayList<>(recent);
+        PlaylistParser.SavedPlaylist playlist = findPlaylist(parentId);
+        return playlist != null ? new ArrayList<>(playlist.songs) : null;
+    }
+
+    public synchronized int cachedParentCount() {
+        return cache.size();
+    }
+
+    /** Forgets built children under memory pressure; they are rebuilt on the next load. */
+    public synchronized void clearCache() {
+        cache.clear();
+    }
+
+    /** Parent of a playable item id, or null if mediaId isn't one. */
+    @Nullable
+    public static String parentOf(@Nullable String mediaId) {
+        if (videoIdOf(mediaId) == null) return null;
+        return mediaId.substring(0, mediaId.lastIndexOf('/'));
+    }
+
+    /** Video id of a playable item, or null if mediaId isn't one. */
+    @Nullable
+    public static String videoIdOf(@Nullable String mediaId) {
+        if (mediaId == null) return null;
+        int slash = mediaId.lastIndexOf('/');
+        if (slash <= 0 || slash == mediaId.length() - 1) return null;
+        return mediaId.substring(slash + 1);
+    }
+
+    /** First position of videoId in songs, or -1. */
+    public static int find(List<Song> songs, String videoId) {
+        for (int i = 0; i < songs.size(); i++) {
+            if (videoId.equals(songs.get(i).videoId)) return i;
+        }
+        return -1;
+    }
+
+    // Runs on the handler thread
+    @Nullable
+    private List<MediaItem> build(String parentId, @Nullable List<Song> queueSnapshot) {
+        if (ROOT_ID.equals(parentId)) {
+            List<MediaItem> items = new ArrayList<>(3);
+            items.add(browsable(QUEUE_ID, "Queue"));
+            items.add(browsable(RECENT_ID, "Recently played"));
+            items.add(browsable(PLAYLISTS_ID, "Playlists"));
+            return items;
+        }
+        if (QUEUE_ID.equals(parentId)) {
+            return queueSnapshot != null ? playables(QUEUE_ID, queueSnapshot) : null;
+        }
+        if (PLAYLISTS_ID.equals(parentId)) {
+            List<PlaylistParser.SavedPlaylist> snapshot;
+            synchronized (this) {
+                snapshot = playlists;
+            }
+            List<MediaItem> items = new ArrayList<>(snapshot.size());
+            for (PlaylistParser.SavedPlaylist playlist : snapshot) {
+                items.add(browsable(PLAYLIST_PREFIX + playlist.id, playlist.name));
+            }
+            return items;
+        }
+        List<Song> songs = getSongs(parentId);
+        return songs != null ? playables(parentId, songs) : null;
+    }
+
+    @Nullable
+    private PlaylistParser.SavedPlaylist findPlaylist(String parentId) {
+        if (!parentId.startsWith(PLAYLIST_PREFIX)) return null;
+        String id = parentId.substring(PLAYLIST_PREFIX.length());
+        for (PlaylistParser.SavedPlaylist playlist : playlists) {
+            if (playlist.id.equals(id)) return playlist;
+        }
+        return null;
+    }
+
+    // EXTRA_PAGE / EXTRA_PAGE_SIZE as MediaBrowserCompat defines them; no paging unless both are set
+    private static List<MediaItem> page(List<MediaItem> all, @Nullable Bundle options) {
+        if (options == null) return all;
+        int page = options.getInt(MediaBrowserCompat.EXTRA_PAGE, -1);
+        int pageSize = options.getInt(MediaBrowserCompat.EXTRA_PAGE_SIZE, -1);
+        if (page < 0 || pageSize < 1) return all;
+        long from = (long) page * pageSize;
+        if (from >= all.size()) return Collections.emptyList();
+        return new ArrayList<>(all.subList((int) from, (int) Math.min(all.size(), from + pageSize)));
+    }
+
+    private static List<MediaItem> playables(String parentId, List<Song> songs) {
+        List<MediaItem> items = new ArrayList<>(songs.size());
+        for (Song song : songs) {
+            // Placeholders for malformed entries have nothing to play
+            if (song.videoId == null || song.videoId.isEmpty()) continue;
+            MediaDescriptionCompat.Builder description = new MediaDescriptionCompat.Builder()
+                    .setMediaId(parentId + "/" + song.videoId)
+                    .setTitle(song.title)
+                    .setSubtitle(song.artist);
+            if (song.thumbnailUrl != null && !song.thumbnailUrl.isEmpty()) {
+                description.setIconUri(Uri.parse(song.thumbnailUrl));
+            }
+            items.add(new MediaItem(description.build(), MediaItem.FLAG_PLAYABLE));
+        }
+        return items;
+    }
+
+    private static MediaItem browsable(String mediaId, String title) {
+        return new MediaItem(new MediaDescriptionCompat.Builder()
+                .setMediaId(mediaId)
+                .setTitle(title)
+                .build(), MediaItem.FLAG_BROWSABLE);
+    }
+
+    // Reads the persisted lists once, on the handler thread
+    private void ensureLoaded() {
+        synchronized (this) {
+            if (loaded) return;
+        }
+        List<Song> savedRecent = readRecent();
+        List<PlaylistParser.SavedPlaylist> savedPlaylists = new ArrayList<>();
+        try (Reader reader = new InputStreamReader(playlistsFile.openRead(), StandardCharsets.UTF_8)) {
+            savedPlaylists = PlaylistParser.parsePlaylists(reader);
+        } catch (IOException e) {
+            // Nothing saved yet
+        }
+        synchronized (this) {
+            if (loaded) return;
+            recent.addAll(savedRecent);
+            playlists = savedPlaylists;
+            loaded = true;
+        }
+    }
+
+    private List<Song> readRecent() {
+        try (Reader reader = new InputStreamReader(recentFile.openRead(), StandardCharsets.UTF_8)) {
+            return PlaylistParser.parse(reader).songs;
+        } catch (IOException e) {
+            return new ArrayList<>();
+        }
+    }
+
+    private interface JsonBody {
+        void write(JsonWriter out) throws IOException;
+    }
+
+    private static void write(AtomicFile file, JsonBody body) {
+        FileOutputStream fos = null;
+        try {
+            fos = file.startWrite();
+            JsonWriter out = new JsonWriter(new OutputStreamWriter(fos, StandardCharsets.UTF_8));
+            body.write(out);
+            out.flush();
+            file.finishWrite(fos);
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to persist browse data", e);
+            if (fos != null) file.failWrite(fos);
+        }
+    }
+
+    private static void writeSongs(JsonWriter out, List<Song> songs) throws IOException {
+        out.beginArray();
+        for (Song song : songs) {
+            out.beginObject();
+            out.name("videoId").value(song.videoId);
+            out.name("title").value(song.title);
+            out.name("artist").value(song.artist);
+            out.name("thumbnailUrl").value(song.thumbnailUrl);
+            out.endObject();
+        }
+        out.endArray();
+    }
+}
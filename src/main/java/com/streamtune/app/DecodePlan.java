@@ -0,0 +1,69 @@
+package com.streamtune.app;
+
+import androidx.annotation.Nullable;
+
+/**
+ * How ArtworkDecoder will turn an image of a given size and type into pixels:
+ * the power-of-two sample size, the density pair that finishes the downscale
+ * inside the decoder, and whether it needs ARGB_8888. Plain arithmetic with no
+ * framework types, so it can be checked and benchmarked on the JVM.
+ */
+public final class DecodePlan {
+
+    public final int sampleSize;
+    /** Both 0 when sampling alone lands within the bound. */
+    public final int inDensity;
+    public final int inTargetDensity;
+    /** False means RGB_565 is fine: a JPEG, from a caller that allows it. */
+    public final boolean argb8888;
+    /** Expected size of the decoded bitmap. */
+    public final int width;
+    public final int height;
+
+    private DecodePlan(int sampleSize, int inDensity, int inTargetDensity, boolean argb8888, int width, int height) {
+        this.sampleSize = sampleSize;
+        this.inDensity = inDensity;
+        this.inTargetDensity = inTargetDensity;
+        this.argb8888 = argb8888;
+        this.width = width;
+        this.height = height;
+    }
+
+    public static DecodePlan of(int sourceWidth, int sourceHeight, @Nullable String mimeType,
+                                int maxDimension, boolean allowRgb565) {
+        int largest = Math.max(sourceWidth, sourceHeight);
+        int sampleSize = calculateInSampleSize(largest, maxDimension);
+        int sampledLargest = largest / sampleSize;
+        boolean argb8888 = !allowRgb565 || hasAlpha(mimeType);
+        int width = sourceWidth / sampleSize;
+        int height = sourceHeight / sampleSize;
+        if (sampledLargest <= maxDimension) {
+            return new DecodePlan(sampleSize, 0, 0, argb8888, width, height);
+        }
+        float scale = (float) maxDimension / sampledLargest;
+        return new DecodePlan(sampleSize, sampledLargest, maxDimension, argb8888,
+                Math.round(width * scale), Math.round(height * scale));
+    }
+
+    public boolean isScaled() {
+        return inDensity != 0;
+    }
+
+    static int calculateInSampleSize(int largest, int maxDimension) {
+        int sampleSize = 1;
+        while (largest / (sampleSize * 2) >= maxDimension) {
+            sampleSize *= 2;
+        }
+        return sampleSize;
+    }
+
+    private static boolean hasAlpha(@Nullable String mimeType) {
+        return mimeType == null || !mimeType.equals("image/jpeg");
+    }
+
+    @Override
+    public String toString() {
+        return "sample " + sampleSize + (isScaled() ? ", scale " + inDensity + "->" + inTargetDensity : "")
+                + ", " + width + "x" + height + (argb8888 ? " ARGB_8888" : " RGB_565");
+    }
+}
@@ -0,0 +1,105 @@
+package com.streamtune.app;
+
+import java.io.File;
+import java.security.MessageDigest;
+import java.util.Arrays;
+
+/**
+ * A cache directory bounded by total size. Entries are named by a hash of their
+ * key, written to a temp file and moved into place by commit(), which then evicts
+ * least-recently-used files past the cap; lastModified is the LRU clock, so
+ * readers touch() what they serve. Shared by ArtworkCache and WebAssetCache.
+ */
+public class DiskLru {
+
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private final File dir;
+    private final long maxBytes;
+    private long bytes = -1; // computed lazily on first commit
+    private final long createdAt = System.currentTimeMillis();
+
+    public DiskLru(File dir, long maxBytes) {
+        this.dir = dir;
+        this.maxBytes = maxBytes;
+    }
+
+    /** Creates the directory if needed; false if it can't be. */
+    public boolean ensureDir() {
+        return dir.isDirectory() || dir.mkdirs();
+    }
+
+    public File file(String key) {
+        return new File(dir, hash(key));
+    }
+
+    /** Per thread, so two writers of the same entry never share a temp file. */
+    public File tempFor(File target) {
+        return new File(dir, target.getName() + "." + Thread.currentThread().getId() + TEMP_SUFFIX);
+    }
+
+    /** Moves a finished temp file over target and trims past the cap. Returns whether target now exists. */
+    public synchronized boolean commit(File tmp, File target) {
+        ensureSize();
+        long previous = target.isFile() ? target.length() : 0;
+        if (!tmp.renameTo(target)) {
+            tmp.delete();
+            return false;
+        }
+        bytes += target.length() - previous;
+        trim();
+        return target.isFile();
+    }
+
+    public static void touch(File file) {
+        file.setLastModified(System.currentTimeMillis());
+    }
+
+    /** Bytes on disk, or -1 before the first commit has measured the directory. */
+    public synchronized long sizeBytes() {
+        return bytes;
+    }
+
+    // Temp files live here too but only count once commit() moves them into place.
+    // Ones older than this instance were left by a previous process, so they go;
+    // newer ones may still be in flight on another thread.
+    private void ensureSize() {
+        if (bytes >= 0) return;
+        long total = 0;
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File f : files) {
+                if (!isTemp(f)) total += f.length();
+                else if (f.lastModified() < createdAt) f.delete();
+            }
+        }
+        bytes = total;
+    }
+
+    private void trim() {
+        if (bytes <= maxBytes) return;
+        File[] files = dir.listFiles(f -> !isTemp(f));
+        if (files == null) return;
+        Arrays.sort(files, (a, b) -> Long.compare(a.lastModified(), b.lastModified()));
+        for (File f : files) {
+            if (bytes <= maxBytes) break;
+            long len = f.length();
+            if (f.delete()) bytes -= len;
+        }
+    }
+
+    private static boolean isTemp(File f) {
+        return f.getName().endsWith(TEMP_SUFFIX);
+    }
+
+    static String hash(String key) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(key.getBytes("UTF-8"));
+            StringBuilder sb = new StringBuilder(digest.length * 2);
+            for (byte b : digest) sb.append(String.format("%02x", b));
+            return sb.toString();
+        } catch (Exception e) {
+            return Integer.toHexString(key.hashCode());
+        }
+    }
+}
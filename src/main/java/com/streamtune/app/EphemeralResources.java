@@ -0,0 +1,93 @@
+package com.streamtune.app;
+
+import android.net.Uri;
+import android.os.SystemClock;
+import android.webkit.WebResourceRequest;
+import android.webkit.WebResourceResponse;
+
+import androidx.annotation.Nullable;
+
+import java.io.ByteArrayInputStream;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Short-lived in-memory resources handed to the page by URL instead of as a JS
+ * string. URLs live under the app's own origin, so the page can fetch() them and
+ * draw them to a canvas without CORS or tainting; they stop resolving after the TTL.
+ * Served from shouldInterceptRequest.
+ */
+public class EphemeralResources {
+
+    private static final String PATH_PREFIX = "/__native/";
+    private static final long TTL_MS = 60_000;
+
+    private static final class Entry {
+        final byte[] data;
+        final String mimeType;
+        final long expiresAt;
+
+        Entry(byte[] data, String mimeType, long expiresAt) {
+            this.data = data;
+            this.mimeType = mimeType;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private final String origin;
+    // Guarded by this
+    private final Map<String, Entry> entries = new HashMap<>();
+
+    public EphemeralResources(String origin) {
+        this.origin = origin;
+    }
+
+    /** Stores data and returns the URL that serves it until the TTL runs out. */
+    public synchronized String publish(byte[] data, String mimeType, String extension) {
+        pruneExpired();
+        String path = PATH_PREFIX + UUID.randomUUID() + "." + extension;
+        entries.put(path, new Entry(data, mimeType, SystemClock.uptimeMillis() + TTL_MS));
+        return origin + path;
+    }
+
+    /** A response for one of our URLs (404 once expired), or null for anything else. */
+    @Nullable
+    public WebResourceResponse intercept(WebResourceRequest request) {
+        Uri uri = request.getUrl();
+        String path = uri.getPath();
+        if (path == null || !path.startsWith(PATH_PREFIX) || !uri.toString().startsWith(origin + "/")) return null;
+        Entry entry;
+        synchronized (this) {
+            pruneExpired();
+            entry = entries.get(path);
+        }
+        Map<String, String> headers = new HashMap<>();
+        headers.put("Cache-Control", "no-store");
+        if (entry == null) {
+            return new WebResourceResponse("text/plain", "utf-8", 404, "Not Found", headers,
+                    new ByteArrayInputStream(new byte[0]));
+        }
+        return new WebResourceResponse(entry.mimeType, null, 200, "OK", headers,
+                new ByteArrayInputStream(entry.data));
+    }
+
+    public synchronized long sizeBytes() {
+        long total = 0;
+        for (Entry entry : entries.values()) total += entry.data.length;
+        return total;
+    }
+
+    /** Drops everything; URLs already handed out start returning 404. */
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    private void pruneExpired() {
+        long now = SystemClock.uptimeMillis();
+        for (Iterator<Entry> it = entries.values().iterator(); it.hasNext(); ) {
+            if (it.next().expiresAt <= now) it.remove();
+        }
+    }
+}
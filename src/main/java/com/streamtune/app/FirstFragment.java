@@ -2,23 +2,25 @@ package com.streamtune.app;
 
 import android.Manifest;
 import android.app.Activity;
+import android.content.ActivityNotFoundException;
 import android.content.BroadcastReceiver;
+import android.content.ContentResolver;
 import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
 import android.content.pm.PackageManager;
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.net.Uri;
 import android.os.Build;
 import android.os.Bundle;
 import android.provider.MediaStore;
-import android.util.Base64;
 import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
 import android.webkit.CookieManager;
+import android.webkit.WebChromeClient;
+import android.webkit.WebResourceRequest;
+import android.webkit.WebResourceResponse;
 import android.webkit.WebSettings;
 import android.webkit.WebView;
 import android.webkit.WebViewClient;
@@ -30,6 +32,7 @@ import androidx.activity.result.contract.ActivityResultContracts;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.core.content.ContextCompat;
+import androidx.core.os.TraceCompat;
 import androidx.fragment.app.Fragment;
 import androidx.localbroadcastmanager.content.LocalBroadcastManager;
 
@@ -44,8 +47,6 @@ import com.google.firebase.auth.FirebaseAuth;
 import com.google.firebase.auth.GoogleAuthProvider;
 import com.streamtune.app.databinding.FragmentFirstBinding;
 
-import java.io.ByteArrayOutputStream;
-import java.io.InputStream;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
@@ -53,10 +54,14 @@ public class FirstFragment extends Fragment {
 
     private FragmentFirstBinding binding;
     private WebView webView;
+    private WebAssetCache assetCache;
+    private final EphemeralResources ephemeralResources = new EphemeralResources(APP_ORIGIN);
+    private final ResourceManager webResources = new ResourceManager();
     private final ExecutorService executorService = Executors.newSingleThreadExecutor();
 
     // Receivers
     private BroadcastReceiver uiUpdateReceiver;
+    private BroadcastReceiver libraryPageReceiver;
     private BroadcastReceiver googleSignInReceiver;
     private BroadcastReceiver chooseImageReceiver;
 
@@ -69,6 +74,8 @@ public class FirstFragment extends Fragment {
     private ActivityResultLauncher<String> requestPermissionLauncher;
 
     private static final String TAG = "FirstFragment";
+    private static final int PROFILE_IMAGE_MAX_PX = 1024;
+    private static final String APP_ORIGIN = "https://sttreamtune.vercel.app";
 
     @Override
     public void onCreate(@Nullable Bundle savedInstanceState) {
@@ -90,12 +97,40 @@ public class FirstFragment extends Fragment {
         super.onViewCreated(view, savedInstanceState);
 
         setupWebView();
+        setupMemoryTrimming();
         setupUIReciever();
         setupGoogleSignInReceiver();
         setupChooseImageReceiver();
         setupBackButtonHandler();
     }
 
+    // The page itself stays loaded: reloading it would cost more than it frees
+    private void setupMemoryTrimming() {
+        webResources.register("webview-ram-cache", ResourceManager.GRADE_MEDIUM, new ResourceManager.Trimmable() {
+            @Override
+            public long sizeBytes() {
+                return ResourceManager.UNKNOWN_SIZE;
+            }
+
+            @Override
+            public void trim(int grade) {
+                if (webView != null) webView.clearCache(false);
+            }
+        });
+        webResources.register("shared-images", ResourceManager.GRADE_HEAVY, new ResourceManager.Trimmable() {
+            @Override
+            public long sizeBytes() {
+                return ephemeralResources.sizeBytes();
+            }
+
+            @Override
+            public void trim(int grade) {
+                ephemeralResources.clear();
+            }
+        });
+        requireContext().registerComponentCallbacks(webResources);
+    }
+
     private void setupActivityLaunchers() {
         // THIS LAUNCHER HANDLES THE RESULT FROM THE GOOGLE SIGN-IN ACTIVITY
         signInLauncher = registerForActivityResult(
@@ -127,7 +162,7 @@ public class FirstFragment extends Fragment {
                     if (result.getResultCode() == Activity.RESULT_OK && result.getData() != null && result.getData().getData() != null) {
                         Uri imageUri = result.getData().getData();
                         Log.d("ProfileImage", "Image selected: " + imageUri.toString());
-                        convertImageUriToBase64AndSend(imageUri);
+                        processProfileImageAndSend(imageUri);
                     }
                 });
 
@@ -153,15 +188,64 @@ public class FirstFragment extends Fragment {
     }
 
     private void setupWebView() {
+        TraceCompat.beginSection("FirstFragment.setupWebView");
+        try {
+            configureWebView();
+        } finally {
+            TraceCompat.endSection();
+        }
+    }
+
+    private void configureWebView() {
         WebSettings webSettings = webView.getSettings();
         webSettings.setJavaScriptEnabled(true);
         webSettings.setDomStorageEnabled(true);
         webSettings.setMediaPlaybackRequiresUserGesture(false);
         CookieManager.getInstance().setAcceptThirdPartyCookies(webView, true);
         webView.addJavascriptInterface(new WebAppInterface(requireContext()), "Android");
+        assetCache = WebAssetCache.create(requireContext(), APP_ORIGIN);
+        webView.setWebViewClient(new WebViewClient() {
+            @Override
+            public WebResourceResponse shouldInterceptRequest(WebView view, WebResourceRequest request) {
+                WebResourceResponse local = ephemeralResources.intercept(request);
+                return local != null ? local : assetCache.intercept(request);
+            }
+
+            // With no WebViewClient every navigation went to the system; keep that for other sites,
+            // but only for the page itself: embeds such as the YouTube player navigate their own frames
+            @Override
+            public boolean shouldOverrideUrlLoading(WebView view, WebResourceRequest request) {
+                return request.isForMainFrame() && openExternally(request.getUrl());
+            }
+
+            // Below N nothing calls the overload above, and there is no frame to check
+            @Override
+            @SuppressWarnings("deprecation")
+            public boolean shouldOverrideUrlLoading(WebView view, String url) {
+                return openExternally(Uri.parse(url));
+            }
+
+            private boolean openExternally(Uri uri) {
+                if (uri.toString().startsWith(APP_ORIGIN + "/")) return false;
+                try {
+                    startActivity(new Intent(Intent.ACTION_VIEW, uri));
+                    return true;
+                } catch (ActivityNotFoundException e) {
+                    return false;
+                }
+            }
+        });
+        webView.setWebChromeClient(new WebChromeClient() {
+            @Override
+            public void onProgressChanged(WebView view, int newProgress) {
+                if (newProgress == 100 && getActivity() instanceof MainActivity) {
+                    ((MainActivity) getActivity()).onWebContentReady();
+                }
+            }
+        });
         
         // Get initial URL from MainActivity (could be a deep link)
-        String urlToLoad = "https://sttreamtune.vercel.app/";
+        String urlToLoad = APP_ORIGIN + "/";
         if (getActivity() instanceof MainActivity) {
             urlToLoad = ((MainActivity) getActivity()).getInitialUrl();
         }
@@ -194,15 +278,29 @@ public class FirstFragment extends Fragment {
         uiUpdateReceiver = new BroadcastReceiver() {
             @Override
             public void onReceive(Context context, Intent intent) {
-                if ("UPDATE_UI".equals(intent.getAction())) {
-                    String stateJson = intent.getStringExtra("STATE_JSON");
+                if (UiUpdateChannel.ACTION_UPDATE_UI.equals(intent.getAction())) {
+                    String stateJson = intent.getStringExtra(UiUpdateChannel.EXTRA_STATE_JSON);
                     if (webView != null && stateJson != null) {
                         webView.post(() -> webView.evaluateJavascript("if(window.updateFromNative) { window.updateFromNative(" + stateJson + "); }", null));
                     }
                 }
             }
         };
-        LocalBroadcastManager.getInstance(requireContext()).registerReceiver(uiUpdateReceiver, new IntentFilter("UPDATE_UI"));
+        LocalBroadcastManager.getInstance(requireContext()).registerReceiver(uiUpdateReceiver, new IntentFilter(UiUpdateChannel.ACTION_UPDATE_UI));
+
+        libraryPageReceiver = new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                String pageJson = intent.getStringExtra(LibraryStore.EXTRA_PAGE_JSON);
+                if (webView == null || pageJson == null) return;
+                int requestId = intent.getIntExtra(LibraryStore.EXTRA_REQUEST_ID, 0);
+                int offset = intent.getIntExtra(LibraryStore.EXTRA_OFFSET, 0);
+                String js = "if(window.onNativeLibraryPage) { window.onNativeLibraryPage("
+                        + requestId + ", " + offset + ", " + pageJson + "); }";
+                webView.post(() -> webView.evaluateJavascript(js, null));
+            }
+        };
+        LocalBroadcastManager.getInstance(requireContext()).registerReceiver(libraryPageReceiver, new IntentFilter(LibraryStore.ACTION_PLAYLIST_PAGE));
     }
 
     private void setupGoogleSignInReceiver() {
@@ -264,28 +362,27 @@ public class FirstFragment extends Fragment {
         pickImageLauncher.launch(intent);
     }
 
-    private void convertImageUriToBase64AndSend(Uri imageUri) {
+    // The page gets a short-lived same-origin URL to fetch, not the image inlined into a JS string
+    private void processProfileImageAndSend(Uri imageUri) {
         if (getContext() == null) return;
         Toast.makeText(getContext(), "Processing image...", Toast.LENGTH_SHORT).show();
+        ContentResolver resolver = requireContext().getContentResolver();
 
         executorService.submit(() -> {
-            try (InputStream inputStream = requireActivity().getContentResolver().openInputStream(imageUri)) {
-                Bitmap bitmap = BitmapFactory.decodeStream(inputStream);
-                ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
-                bitmap.compress(Bitmap.CompressFormat.JPEG, 80, byteArrayOutputStream);
-                byte[] byteArray = byteArrayOutputStream.toByteArray();
-                String base64Image = Base64.encodeToString(byteArray, Base64.NO_WRAP);
-                String dataUrl = "data:image/jpeg;base64," + base64Image;
+            try {
+                byte[] jpeg = new ProfileImagePipeline(PROFILE_IMAGE_MAX_PX).process(resolver, imageUri);
+                String imageUrl = ephemeralResources.publish(jpeg, "image/jpeg", "jpg");
 
                 if (getActivity() != null) {
                     getActivity().runOnUiThread(() -> {
-                        String javascript = "if(window.updateProfileImage) { window.updateProfileImage('" + dataUrl + "'); }";
+                        if (webView == null) return;
+                        String javascript = "if(window.updateProfileImage) { window.updateProfileImage('" + imageUrl + "'); }";
                         webView.evaluateJavascript(javascript, null);
                         Toast.makeText(getContext(), "Image sent to web app!", Toast.LENGTH_SHORT).show();
                     });
                 }
             } catch (Exception e) {
-                Log.e("ProfileImage", "Failed to convert image to Base64", e);
+                Log.e("ProfileImage", "Failed to process profile image", e);
                 if (getActivity() != null) {
                     getActivity().runOnUiThread(() -> Toast.makeText(getContext(), "Failed to process image.", Toast.LENGTH_SHORT).show());
                 }
@@ -293,12 +390,45 @@ public class FirstFragment extends Fragment {
         });
     }
 
+    @Override
+    public void onStart() {
+        super.onStart();
+        notifyUiVisibility(!isHidden());
+    }
+
+    @Override
+    public void onStop() {
+        super.onStop();
+        notifyUiVisibility(false);
+    }
+
+    @Override
+    public void onHiddenChanged(boolean hidden) {
+        super.onHiddenChanged(hidden);
+        notifyUiVisibility(!hidden);
+    }
+
+    // Lets the player service stop sending per-second ticks nobody can see
+    private void notifyUiVisibility(boolean visible) {
+        if (getContext() == null) return;
+        Intent intent = new Intent(UiUpdateChannel.ACTION_UI_VISIBILITY);
+        intent.putExtra(UiUpdateChannel.EXTRA_VISIBLE, visible);
+        LocalBroadcastManager.getInstance(requireContext()).sendBroadcast(intent);
+    }
+
     @Override
     public void onDestroyView() {
         super.onDestroyView();
         if (uiUpdateReceiver != null) LocalBroadcastManager.getInstance(requireContext()).unregisterReceiver(uiUpdateReceiver);
+        if (libraryPageReceiver != null) LocalBroadcastManager.getInstance(requireContext()).unregisterReceiver(libraryPageReceiver);
         if (googleSignInReceiver != null) LocalBroadcastManager.getInstance(requireContext()).unregisterReceiver(googleSignInReceiver);
         if (chooseImageReceiver != null) LocalBroadcastManager.getInstance(requireContext()).unregisterReceiver(chooseImageReceiver);
+        requireContext().unregisterComponentCallbacks(webResources);
+        webResources.unregisterAll();
+        if (assetCache != null) {
+            Log.d(TAG, "Web asset cache: " + assetCache);
+            assetCache.shutdown();
+        }
         binding = null;
     }
 }
\ No newline at end of file
@@ -0,0 +1,601 @@
+package com.streamtune.app;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.content.Intent;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
+import android.os.Process;
+import android.util.JsonReader;
+import android.util.JsonToken;
+import android.util.JsonWriter;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+import androidx.localbroadcastmanager.content.LocalBroadcastManager;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * On-device copy of the user's library: playlists (the user's own and the
+ * community ones), the tracks they reference and native play history. The page
+ * reads it page by page over the bridge so the library renders from disk before
+ * any network round trip, and writes whole batches back when fresher data arrives.
+ *
+ * Reads run on the caller's thread (the WebView's bridge thread); WAL keeps them
+ * from waiting on writes, which go through a single background thread. The page
+ * reads one bounded page synchronously before first paint and has the rest
+ * streamed back through streamPlaylistsAsync. After
+ * writes a reconciliation pass resolves history to tracks and prunes what nothing
+ * references any more. Nothing here touches the network.
+ */
+public class LibraryStore extends SQLiteOpenHelper {
+
+    private static final String TAG = "LibraryStore";
+    private static final String DB_NAME = "library.db";
+    private static final int DB_VERSION = 2;
+
+    public static final String SOURCE_USER = "user";
+    public static final String SOURCE_COMMUNITY = "community";
+
+    public static final int MAX_PAGE_SIZE = 200;
+
+    /** Broadcast once per page by streamPlaylistsAsync; FirstFragment hands it to the page. */
+    public static final String ACTION_PLAYLIST_PAGE = "LIBRARY_PLAYLIST_PAGE";
+    public static final String EXTRA_REQUEST_ID = "REQUEST_ID";
+    public static final String EXTRA_OFFSET = "OFFSET";
+    public static final String EXTRA_PAGE_JSON = "PAGE_JSON";
+    // Small, so the JS thread never spends long on any one page
+    private static final int STREAM_PAGE_SIZE = 25;
+    private static final int MAX_HISTORY = 500;
+    // Tracks outside any playlist or history are kept this long, so the page's own cache can lean on them
+    private static final long UNREFERENCED_TRACK_TTL_MS = 30L * 24 * 60 * 60 * 1000;
+    private static final long RECONCILE_DELAY_MS = 5000;
+    private static final String[] TRACK_COLUMNS = {"id", "video_id", "title", "artist", "album", "artwork", "duration"};
+
+    private static LibraryStore instance;
+
+    public static synchronized LibraryStore get(Context context) {
+        if (instance == null) instance = new LibraryStore(context.getApplicationContext(), DB_NAME);
+        return instance;
+    }
+
+    private final ScheduledThreadPoolExecutor writer = new ScheduledThreadPoolExecutor(1, runnable -> {
+        Thread thread = new Thread(() -> {
+            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+            runnable.run();
+        }, "LibraryStore");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final ExecutorService reads = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(() -> {
+            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+            runnable.run();
+        }, "LibraryStoreReads");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final Context context;
+    private boolean reconcileQueued; // guarded by this
+    private long lastBatchStamp; // writer thread
+
+    /** A null name keeps the database in memory, which is what a test wants. */
+    LibraryStore(Context context, @Nullable String name) {
+        super(context, name, null, DB_VERSION);
+        this.context = context;
+        setWriteAheadLoggingEnabled(true);
+        scheduleReconcile();
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE tracks ("
+                + "id TEXT PRIMARY KEY, video_id TEXT NOT NULL, title TEXT NOT NULL DEFAULT '',"
+                + " artist TEXT NOT NULL DEFAULT '', album TEXT NOT NULL DEFAULT '',"
+                + " artwork TEXT NOT NULL DEFAULT '', duration INTEGER NOT NULL DEFAULT 0,"
+                + " updated_at INTEGER NOT NULL)");
+        db.execSQL("CREATE INDEX tracks_video_id ON tracks(video_id)");
+        db.execSQL("CREATE INDEX tracks_updated_at ON tracks(updated_at)");
+
+        // Ids are only unique within a source: a user playlist may share one with a community copy.
+        // sort_key is the position in the last batch for that source; updated_at is that batch's stamp.
+        // embeds_tracks records that the page sent full track objects, which it expects back.
+        db.execSQL("CREATE TABLE playlists ("
+                + "source TEXT NOT NULL, id TEXT NOT NULL, name TEXT NOT NULL DEFAULT '',"
+                + " description TEXT NOT NULL DEFAULT '', cover_art TEXT NOT NULL DEFAULT '',"
+                + " is_public INTEGER NOT NULL DEFAULT 0, owner TEXT NOT NULL DEFAULT '', owner_id TEXT,"
+                + " embeds_tracks INTEGER NOT NULL DEFAULT 0,"
+                + " sort_key INTEGER NOT NULL, updated_at INTEGER NOT NULL, PRIMARY KEY (source, id))");
+        db.execSQL("CREATE INDEX playlists_source_sort ON playlists(source, sort_key)");
+
+        db.execSQL("CREATE TABLE playlist_tracks ("
+                + "source TEXT NOT NULL, playlist_id TEXT NOT NULL, position INTEGER NOT NULL, track_id TEXT NOT NULL,"
+                + " PRIMARY KEY (source, playlist_id, position))");
+        db.execSQL("CREATE INDEX playlist_tracks_track ON playlist_tracks(track_id)");
+
+        // The service only knows video IDs; track_id is filled in once a matching track is stored
+        db.execSQL("CREATE TABLE history ("
+                + "id INTEGER PRIMARY KEY AUTOINCREMENT, video_id TEXT NOT NULL, track_id TEXT,"
+                + " played_at INTEGER NOT NULL)");
+        db.execSQL("CREATE INDEX history_played_at ON history(played_at)");
+        db.execSQL("CREATE INDEX history_track ON history(track_id)");
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        // Everything here can be re-sent by the page; no migration is worth its risk yet
+        db.execSQL("DROP TABLE IF EXISTS history");
+        db.execSQL("DROP TABLE IF EXISTS playlist_tracks");
+        db.execSQL("DROP TABLE IF EXISTS playlists");
+        db.execSQL("DROP TABLE IF EXISTS tracks");
+        onCreate(db);
+    }
+
+    // ---- Writes: batched, one transaction each, on the writer thread ----
+
+    /** Replaces every playlist of source with the JSON array given (the page's Playlist objects). */
+    public void putPlaylistsAsync(String source, String json) {
+        submit(() -> applyPlaylists(source, new StringReader(json)));
+    }
+
+    public void recordPlayAsync(String videoId, long playedAt) {
+        if (videoId == null || videoId.isEmpty()) return;
+        submit(() -> {
+            ContentValues values = new ContentValues(2);
+            values.put("video_id", videoId);
+            values.put("played_at", playedAt);
+            getWritableDatabase().insert("history", null, values);
+        });
+    }
+
+    /** Synchronous form of putPlaylistsAsync; returns how many playlists were stored. */
+    int applyPlaylists(String source, Reader json) throws IOException {
+        List<PlaylistRow> rows = readPlaylists(json);
+        long stamp = nextBatchStamp();
+        SQLiteDatabase db = getWritableDatabase();
+        db.beginTransaction();
+        try {
+            SQLiteStatement member = db.compileStatement(
+                    "INSERT INTO playlist_tracks (source, playlist_id, position, track_id) VALUES (?, ?, ?, ?)");
+            for (int i = 0; i < rows.size(); i++) {
+                PlaylistRow row = rows.get(i);
+                db.insertWithOnConflict("playlists", null, row.toValues(source, i, stamp), SQLiteDatabase.CONFLICT_REPLACE);
+                db.delete("playlist_tracks", "source = ? AND playlist_id = ?", new String[]{source, row.id});
+                for (int position = 0; position < row.trackIds.size(); position++) {
+                    member.bindString(1, source);
+                    member.bindString(2, row.id);
+                    member.bindLong(3, position);
+                    member.bindString(4, row.trackIds.get(position));
+                    member.executeInsert();
+                }
+                for (TrackRow track : row.tracks) upsertTrack(db, track, stamp);
+            }
+            // Whatever this batch didn't mention is gone upstream
+            db.delete("playlists", "source = ? AND updated_at < ?", new String[]{source, Long.toString(stamp)});
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        return rows.size();
+    }
+
+    // ---- Reads: paged, JSON in the shape the page already uses ----
+
+    /** {"total":n,"playlists":[Playlist...]} ordered as last written. */
+    public String getPlaylists(String source, int offset, int limit) {
+        SQLiteDatabase db = getReadableDatabase();
+        StringWriter out = new StringWriter();
+        try (JsonWriter json = new JsonWriter(out);
+             Cursor c = db.query("playlists",
+                     new String[]{"id", "name", "description", "cover_art", "is_public", "owner", "owner_id", "embeds_tracks"},
+                     "source = ?", new String[]{source}, null, null, "sort_key",
+                     page(offset, limit))) {
+            json.beginObject();
+            json.name("total").value(DatabaseUtils.queryNumEntries(db, "playlists", "source = ?", new String[]{source}));
+            json.name("playlists").beginArray();
+            while (c.moveToNext()) {
+                String id = c.getString(0);
+                json.beginObject();
+                json.name("id").value(id);
+                json.name("name").value(c.getString(1));
+                json.name("description").value(c.getString(2));
+                json.name("coverArt").value(c.getString(3));
+                json.name("public").value(c.getInt(4) != 0);
+                json.name("owner").value(c.getString(5));
+                if (!c.isNull(6)) json.name("ownerId").value(c.getString(6));
+                writeMembers(db, json, source, id, c.getInt(7) != 0);
+                json.endObject();
+            }
+            json.endArray();
+            json.endObject();
+        } catch (IOException e) {
+            // StringWriter doesn't throw; this is the JsonWriter signature
+            throw new IllegalStateException(e);
+        }
+        return out.toString();
+    }
+
+    /** {"total":n,"tracks":[Track...]}, most recently written first. */
+    public String getTracks(int offset, int limit) {
+        SQLiteDatabase db = getReadableDatabase();
+        StringWriter out = new StringWriter();
+        try (JsonWriter json = new JsonWriter(out);
+             Cursor c = db.query("tracks", TRACK_COLUMNS, null, null, null, null, "updated_at DESC, id",
+                     page(offset, limit))) {
+            json.beginObject();
+            json.name("total").value(DatabaseUtils.queryNumEntries(db, "tracks"));
+            json.name("tracks").beginArray();
+            while (c.moveToNext()) writeTrack(json, c, 0);
+            json.endArray();
+            json.endObject();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return out.toString();
+    }
+
+    /**
+     * {"total":n,"history":[{videoId,playedAt,track?}...]}, newest first. track is
+     * there once reconciliation has matched the play to a stored track.
+     */
+    public String getHistory(int offset, int limit) {
+        SQLiteDatabase db = getReadableDatabase();
+        StringWriter out = new StringWriter();
+        try (JsonWriter json = new JsonWriter(out);
+             Cursor c = db.rawQuery("SELECT h.video_id, h.played_at, t.id, t.video_id, t.title, t.artist,"
+                     + " t.album, t.artwork, t.duration FROM history h LEFT JOIN tracks t ON t.id = h.track_id"
+                     + " ORDER BY h.played_at DESC, h.id DESC LIMIT " + page(offset, limit), null)) {
+            json.beginObject();
+            json.name("total").value(DatabaseUtils.queryNumEntries(db, "history"));
+            json.name("history").beginArray();
+            while (c.moveToNext()) {
+                json.beginObject();
+                json.name("videoId").value(c.getString(0));
+                json.name("playedAt").value(c.getLong(1));
+                if (!c.isNull(2)) {
+                    json.name("track");
+                    writeTrack(json, c, 2);
+                }
+                json.endObject();
+            }
+            json.endArray();
+            json.endObject();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return out.toString();
+    }
+
+    /**
+     * Reads source from offset on, a page at a time on a background thread, and
+     * broadcasts each page as ACTION_PLAYLIST_PAGE tagged with the caller's requestId.
+     * At least one page always goes out, so the page learns the read is over even
+     * if nothing is left or it failed.
+     */
+    public void streamPlaylistsAsync(String source, int offset, int requestId) {
+        reads.execute(() -> {
+            LocalBroadcastManager broadcasts = LocalBroadcastManager.getInstance(context);
+            int at = Math.max(0, offset);
+            try {
+                long total = DatabaseUtils.queryNumEntries(getReadableDatabase(), "playlists",
+                        "source = ?", new String[]{source});
+                do {
+                    broadcasts.sendBroadcast(pageIntent(requestId, at, getPlaylists(source, at, STREAM_PAGE_SIZE)));
+                    at += STREAM_PAGE_SIZE;
+                } while (at < total);
+            } catch (RuntimeException e) {
+                Log.w(TAG, "Streaming " + source + " playlists failed at " + at, e);
+                broadcasts.sendBroadcast(pageIntent(requestId, at, "{\"total\":0,\"playlists\":[]}"));
+            }
+        });
+    }
+
+    private static Intent pageIntent(int requestId, int offset, String pageJson) {
+        return new Intent(ACTION_PLAYLIST_PAGE)
+                .putExtra(EXTRA_REQUEST_ID, requestId)
+                .putExtra(EXTRA_OFFSET, offset)
+                .putExtra(EXTRA_PAGE_JSON, pageJson);
+    }
+
+    // trackIds always; tracks too when the page embedded them, so e.g. a community playlist renders from disk
+    private static void writeMembers(SQLiteDatabase db, JsonWriter json, String source, String playlistId,
+                                     boolean embedsTracks) throws IOException {
+        json.name("trackIds").beginArray();
+        try (Cursor members = db.query("playlist_tracks", new String[]{"track_id"},
+                "source = ? AND playlist_id = ?", new String[]{source, playlistId}, null, null, "position")) {
+            while (members.moveToNext()) json.value(members.getString(0));
+        }
+        json.endArray();
+        if (!embedsTracks) return;
+        json.name("tracks").beginArray();
+        try (Cursor c = db.rawQuery("SELECT t.id, t.video_id, t.title, t.artist, t.album, t.artwork, t.duration"
+                + " FROM playlist_tracks pt JOIN tracks t ON t.id = pt.track_id"
+                + " WHERE pt.source = ? AND pt.playlist_id = ? ORDER BY pt.position", new String[]{source, playlistId})) {
+            while (c.moveToNext()) writeTrack(json, c, 0);
+        }
+        json.endArray();
+    }
+
+    // A Track in the page's shape, from TRACK_COLUMNS starting at column first
+    private static void writeTrack(JsonWriter json, Cursor c, int first) throws IOException {
+        json.beginObject();
+        json.name("id").value(c.getString(first));
+        json.name("youtubeVideoId").value(c.getString(first + 1));
+        json.name("title").value(c.getString(first + 2));
+        json.name("artist").value(c.getString(first + 3));
+        json.name("album").value(c.getString(first + 4));
+        json.name("artwork").value(c.getString(first + 5));
+        json.name("duration").value(c.getLong(first + 6));
+        json.endObject();
+    }
+
+    // ---- Reconciliation ----
+
+    /**
+     * Queues a reconciliation pass a few seconds out; calls in the meantime fold
+     * into it, so a burst of batches costs one pass.
+     */
+    public void scheduleReconcile() {
+        synchronized (this) {
+            if (reconcileQueued) return;
+            reconcileQueued = true;
+        }
+        writer.schedule(() -> {
+            synchronized (this) {
+                reconcileQueued = false;
+            }
+            try {
+                reconcile(System.currentTimeMillis());
+            } catch (RuntimeException e) {
+                Log.w(TAG, "Reconciliation failed", e);
+            }
+        }, RECONCILE_DELAY_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /** One pass over the whole store; returns the number of rows it touched. */
+    int reconcile(long now) {
+        SQLiteDatabase db = getWritableDatabase();
+        db.beginTransaction();
+        try {
+            SQLiteStatement resolve = db.compileStatement("UPDATE history SET track_id ="
+                    + " (SELECT id FROM tracks WHERE tracks.video_id = history.video_id LIMIT 1)"
+                    + " WHERE track_id IS NULL AND EXISTS (SELECT 1 FROM tracks WHERE tracks.video_id = history.video_id)");
+            int resolved = resolve.executeUpdateDelete();
+            int trimmedHistory = db.delete("history",
+                    "id NOT IN (SELECT id FROM history ORDER BY played_at DESC, id DESC LIMIT " + MAX_HISTORY + ")", null);
+            int orphanMembers = db.delete("playlist_tracks", "NOT EXISTS (SELECT 1 FROM playlists p"
+                    + " WHERE p.source = playlist_tracks.source AND p.id = playlist_tracks.playlist_id)", null);
+            int orphanTracks = db.delete("tracks",
+                    "updated_at < ? AND id NOT IN (SELECT track_id FROM playlist_tracks)"
+                            + " AND id NOT IN (SELECT track_id FROM history WHERE track_id IS NOT NULL)",
+                    new String[]{Long.toString(now - UNREFERENCED_TRACK_TTL_MS)});
+            db.setTransactionSuccessful();
+            int touched = resolved + trimmedHistory + orphanMembers + orphanTracks;
+            if (touched > 0) {
+                Log.d(TAG, "Reconciled: resolved=" + resolved + " trimmedHistory=" + trimmedHistory
+                        + " orphanMembers=" + orphanMembers + " orphanTracks=" + orphanTracks);
+            }
+            return touched;
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    // ---- Internals ----
+
+    private interface Write {
+        void run() throws Exception;
+    }
+
+    private void submit(Write write) {
+        writer.execute(() -> {
+            try {
+                write.run();
+            } catch (Exception e) {
+                Log.w(TAG, "Library write failed", e);
+                return;
+            }
+            scheduleReconcile();
+        });
+    }
+
+    // Strictly increasing even within one millisecond, so "older than this batch" is exact
+    private long nextBatchStamp() {
+        lastBatchStamp = Math.max(System.currentTimeMillis(), lastBatchStamp + 1);
+        return lastBatchStamp;
+    }
+
+    private static String page(int offset, int limit) {
+        int size = Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+        return Math.max(0, offset) + "," + size;
+    }
+
+    private static void upsertTrack(SQLiteDatabase db, TrackRow row, long stamp) {
+        ContentValues values = new ContentValues(8);
+        values.put("id", row.id);
+        values.put("video_id", row.videoId);
+        values.put("title", row.title);
+        values.put("artist", row.artist);
+        values.put("album", row.album);
+        values.put("artwork", row.artwork);
+        values.put("duration", row.duration);
+        values.put("updated_at", stamp);
+        db.insertWithOnConflict("tracks", null, values, SQLiteDatabase.CONFLICT_REPLACE);
+    }
+
+    private static final class TrackRow {
+        String id = "";
+        String videoId = "";
+        String title = "";
+        String artist = "";
+        String album = "";
+        String artwork = "";
+        long duration;
+    }
+
+    private static final class PlaylistRow {
+        String id = "";
+        String name = "";
+        String description = "";
+        String coverArt = "";
+        boolean isPublic;
+        String owner = "";
+        @Nullable String ownerId;
+        boolean embedsTracks;
+        final List<String> trackIds = new ArrayList<>();
+        final List<TrackRow> tracks = new ArrayList<>();
+
+        ContentValues toValues(String source, int sortKey, long stamp) {
+            ContentValues values = new ContentValues(10);
+            values.put("id", id);
+            values.put("source", source);
+            values.put("name", name);
+            values.put("description", description);
+            values.put("cover_art", coverArt);
+            values.put("is_public", isPublic ? 1 : 0);
+            values.put("owner", owner);
+            values.put("owner_id", ownerId);
+            values.put("embeds_tracks", embedsTracks ? 1 : 0);
+            values.put("sort_key", sortKey);
+            values.put("updated_at", stamp);
+            return values;
+        }
+    }
+
+    private static List<PlaylistRow> readPlaylists(Reader json) throws IOException {
+        List<PlaylistRow> rows = new ArrayList<>();
+        try (JsonReader reader = new JsonReader(json)) {
+            reader.beginArray();
+            while (reader.hasNext()) {
+                if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+                    reader.skipValue();
+                    continue;
+                }
+                PlaylistRow row = new PlaylistRow();
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    String name = reader.nextName();
+                    JsonToken token = reader.peek();
+                    boolean array = token == JsonToken.BEGIN_ARRAY;
+                    if (token == JsonToken.NULL || (!array && (name.equals("trackIds") || name.equals("tracks")))) {
+                        reader.skipValue();
+                        continue;
+                    }
+                    switch (name) {
+                        case "id": row.id = readString(reader); break;
+                        case "name": row.name = readString(reader); break;
+                        case "description": row.description = readString(reader); break;
+                        case "coverArt": row.coverArt = readString(reader); break;
+                        case "public": row.isPublic = readBoolean(reader); break;
+                        case "owner": row.owner = readString(reader); break;
+                        case "ownerId": row.ownerId = readString(reader); break;
+                        case "trackIds":
+                            reader.beginArray();
+                            while (reader.hasNext()) {
+                                String trackId = readString(reader);
+                                if (!trackId.isEmpty()) row.trackIds.add(trackId);
+                            }
+                            reader.endArray();
+                            break;
+                        case "tracks":
+                            // Public playlists embed their tracks; keep them so the ids above resolve offline
+                            row.embedsTracks = true;
+                            reader.beginArray();
+                            while (reader.hasNext()) {
+                                TrackRow track = readTrack(reader);
+                                if (track != null) row.tracks.add(track);
+                            }
+                            reader.endArray();
+                            break;
+                        default: reader.skipValue(); break;
+                    }
+                }
+                reader.endObject();
+                if (row.id.isEmpty()) {
+                    Log.w(TAG, "Dropping playlist without an id");
+                } else {
+                    rows.add(row);
+                }
+            }
+            reader.endArray();
+        }
+        return rows;
+    }
+
+    @Nullable
+    private static TrackRow readTrack(JsonReader reader) throws IOException {
+        if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+            reader.skipValue();
+            return null;
+        }
+        TrackRow row = new TrackRow();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (reader.peek() == JsonToken.NULL) {
+                reader.skipValue();
+                continue;
+            }
+            switch (name) {
+                case "id": row.id = readString(reader); break;
+                case "youtubeVideoId": row.videoId = readString(reader); break;
+                case "title": row.title = readString(reader); break;
+                case "artist": row.artist = readString(reader); break;
+                case "album": row.album = readString(reader); break;
+                case "artwork": row.artwork = readString(reader); break;
+                case "duration": row.duration = readDuration(reader); break;
+                default: reader.skipValue(); break;
+            }
+        }
+        reader.endObject();
+        // Local files have no video id and nothing native can do with them
+        return row.id.isEmpty() || row.videoId.isEmpty() ? null : row;
+    }
+
+    // A bad duration costs that track its duration, not the whole batch
+    private static long readDuration(JsonReader reader) throws IOException {
+        JsonToken token = reader.peek();
+        if (token != JsonToken.NUMBER && token != JsonToken.STRING) {
+            reader.skipValue();
+            return 0;
+        }
+        String value = reader.nextString();
+        try {
+            double seconds = Double.parseDouble(value);
+            return Double.isNaN(seconds) || Double.isInfinite(seconds) ? 0 : Math.max(0, (long) seconds);
+        } catch (NumberFormatException e) {
+            Log.w(TAG, "Ignoring malformed duration " + value);
+            return 0;
+        }
+    }
+
+    // Like PlaylistParser: a field of the wrong type is read as empty instead of failing the batch
+    private static String readString(JsonReader reader) throws IOException {
+        JsonToken token = reader.peek();
+        if (token == JsonToken.NULL || token == JsonToken.BEGIN_OBJECT || token == JsonToken.BEGIN_ARRAY) {
+            reader.skipValue();
+            return "";
+        }
+        if (token == JsonToken.BOOLEAN) return String.valueOf(reader.nextBoolean());
+        return reader.nextString();
+    }
+
+    private static boolean readBoolean(JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.BOOLEAN) return reader.nextBoolean();
+        reader.skipValue();
+        return false;
+    }
+}
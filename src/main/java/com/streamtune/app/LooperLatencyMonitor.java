@@ -0,0 +1,95 @@
+package com.streamtune.app;
+
+import android.os.Looper;
+import android.os.StrictMode;
+import android.os.SystemClock;
+import android.util.Log;
+import android.util.Printer;
+
+import androidx.annotation.Nullable;
+
+/**
+ * Debug instrumentation for main-thread cost. Records how long each service command
+ * spends on the main looper and, when installed, logs any looper message that runs
+ * longer than a frame. Install only in debug builds: message logging formats a
+ * string per dispatched message.
+ */
+public class LooperLatencyMonitor {
+
+    private static final String TAG = "LooperLatency";
+    private static final long SLOW_MESSAGE_MS = 16;
+
+    private long commandCount;
+    private long commandNanosTotal;
+    private long commandNanosMax;
+    private long slowMessageCount;
+
+    // What install() replaced, put back by uninstall()
+    @Nullable private StrictMode.ThreadPolicy previousPolicy;
+    @Nullable private Printer previousPrinter;
+
+    /**
+     * Adds StrictMode disk and network checks to the calling thread's policy and logs
+     * slow messages on looper; call on that looper's thread. Looper has no getter for
+     * its Printer, so a caller that already set one passes it as existing: it keeps
+     * receiving every line and is restored by uninstall().
+     */
+    public void install(Looper looper, @Nullable Printer existing) {
+        previousPolicy = StrictMode.getThreadPolicy();
+        previousPrinter = existing;
+        StrictMode.setThreadPolicy(new StrictMode.ThreadPolicy.Builder(previousPolicy)
+                .detectDiskReads()
+                .detectDiskWrites()
+                .detectNetwork()
+                .penaltyLog()
+                .build());
+
+        looper.setMessageLogging(new Printer() {
+            private long startedAt;
+
+            @Override
+            public void println(String x) {
+                if (existing != null) existing.println(x);
+                if (x.startsWith(">>>>>")) {
+                    startedAt = SystemClock.uptimeMillis();
+                } else if (x.startsWith("<<<<<") && startedAt != 0) {
+                    long took = SystemClock.uptimeMillis() - startedAt;
+                    startedAt = 0;
+                    if (took > SLOW_MESSAGE_MS) {
+                        synchronized (LooperLatencyMonitor.this) {
+                            slowMessageCount++;
+                        }
+                        Log.w(TAG, "Slow main-thread message (" + took + " ms): " + x);
+                    }
+                }
+            }
+        });
+    }
+
+    /** Undoes install(); a no-op if it was never installed. Call on the looper's thread. */
+    public void uninstall(Looper looper) {
+        if (previousPolicy == null) return;
+        looper.setMessageLogging(previousPrinter);
+        StrictMode.setThreadPolicy(previousPolicy);
+        previousPolicy = null;
+        previousPrinter = null;
+    }
+
+    public synchronized void recordCommand(String action, long nanos) {
+        commandCount++;
+        commandNanosTotal += nanos;
+        if (nanos > commandNanosMax) commandNanosMax = nanos;
+        if (nanos > SLOW_MESSAGE_MS * 1_000_000L) {
+            Log.w(TAG, "Command " + action + " held the main thread for " + (nanos / 1_000_000L) + " ms");
+        }
+    }
+
+    @Override
+    public synchronized String toString() {
+        long avgMicros = commandCount == 0 ? 0 : commandNanosTotal / commandCount / 1000;
+        return "commands=" + commandCount
+                + " avgMainUs=" + avgMicros
+                + " maxMainUs=" + (commandNanosMax / 1000)
+                + " slowMessages=" + slowMessageCount;
+    }
+}
@@ -4,17 +4,39 @@ import android.content.Intent;
 import android.net.Uri;
 import android.os.Bundle;
 import androidx.appcompat.app.AppCompatActivity;
+import androidx.core.os.TraceCompat;
 import com.streamtune.app.databinding.ActivityMainBinding;
 
 public class MainActivity extends AppCompatActivity {
 
     private ActivityMainBinding binding;
     private String deepLinkUrl = null;
+    private boolean fullyDrawnReported;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
-        super.onCreate(savedInstanceState);
+        TraceCompat.beginSection("MainActivity.onCreate");
+        try {
+            super.onCreate(savedInstanceState);
+            handleDeepLink();
+            binding = ActivityMainBinding.inflate(getLayoutInflater());
+            setContentView(binding.getRoot());
+        } finally {
+            TraceCompat.endSection();
+        }
+    }
+
+    /**
+     * The first frame is only the WebView shell; startup is over once the web app has
+     * loaded. Reporting it gives startup benchmarks a time-to-full-display mark.
+     */
+    public void onWebContentReady() {
+        if (fullyDrawnReported) return;
+        fullyDrawnReported = true;
+        reportFullyDrawn();
+    }
 
+    private void handleDeepLink() {
         // Handle the incoming deep link
         Intent intent = getIntent();
         if (intent != null && Intent.ACTION_VIEW.equals(intent.getAction())) {
@@ -23,9 +45,6 @@ public class MainActivity extends AppCompatActivity {
                 deepLinkUrl = data.toString();
             }
         }
-        
-        binding = ActivityMainBinding.inflate(getLayoutInflater());
-        setContentView(binding.getRoot());
     }
     
     public String getInitialUrl() {
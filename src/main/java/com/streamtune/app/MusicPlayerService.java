@@ -1,18 +1,23 @@
 package com.streamtune.app;
 
-import android.app.Notification;
+import android.app.ActivityManager;
 import android.app.NotificationChannel;
 import android.app.NotificationManager;
-import android.app.PendingIntent;
+import android.content.BroadcastReceiver;
 import android.content.ComponentName;
 import android.content.Context;
 import android.content.Intent;
+import android.content.IntentFilter;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.os.Build;
 import android.os.Bundle;
 import android.os.CountDownTimer;
+import android.os.Handler;
+import android.os.HandlerThread;
 import android.os.IBinder;
+import android.os.Looper;
+import android.os.Process;
+import android.os.SystemClock;
 import android.support.v4.media.MediaBrowserCompat;
 import android.support.v4.media.MediaMetadataCompat;
 import android.support.v4.media.session.MediaSessionCompat;
@@ -21,7 +26,6 @@ import android.util.Log;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
-import androidx.core.app.NotificationCompat;
 import androidx.media.MediaBrowserServiceCompat;
 import androidx.media.session.MediaButtonReceiver;
 import androidx.lifecycle.Lifecycle;
@@ -35,33 +39,98 @@ import com.pierfrancescosoffritti.androidyoutubeplayer.core.player.listeners.Abs
 import com.pierfrancescosoffritti.androidyoutubeplayer.core.player.options.IFramePlayerOptions;
 import com.pierfrancescosoffritti.androidyoutubeplayer.core.player.views.YouTubePlayerView;
 
-import org.json.JSONArray;
-import org.json.JSONObject;
-
-import java.io.InputStream;
-import java.net.HttpURLConnection;
-import java.net.URL;
+import java.io.FileDescriptor;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Reader;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class MusicPlayerService extends MediaBrowserServiceCompat implements LifecycleOwner {
 
     private YouTubePlayer youTubePlayer;
     private MediaSessionCompat mediaSession;
+    private PlaybackStatePublisher playbackStatePublisher;
+    private NotificationRenderer notificationRenderer;
     private final LifecycleRegistry lifecycleRegistry = new LifecycleRegistry(this);
-    private final ExecutorService executorService = Executors.newSingleThreadExecutor();
+    private final ArtworkFetcher artworkFetcher = new ArtworkFetcher();
+    private ArtworkCache artworkCache;
+    private ArtworkDecoder artworkDecoder;
+    private PrefetchScheduler prefetchScheduler;
+    private LibraryStore library;
+    private final ResourceManager resourceManager = new ResourceManager();
+    private NetworkPolicy networkPolicy;
+    private UiUpdateChannel uiChannel;
+
+    // Playlist decoding and notification building run here instead of on the WebView's looper
+    private HandlerThread playbackThread;
+    private Handler playbackHandler;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final LooperLatencyMonitor looperMonitor = new LooperLatencyMonitor();
+    private final PlaybackMetrics metrics = PlaybackMetrics.get();
+    private PlaybackQuarantine quarantine;
+    // Consecutive failed tracks; auto-advance gives up once either limit is hit
+    private int errorStreakCount;
+    private long errorStreakStartedAt;
+    private static final int MAX_ERROR_SKIPS = 8;
+    private static final long ERROR_SKIP_BUDGET_MS = 15000;
+    // Transient errors retry the same track, 1 s then 2 s later, before it is skipped (not quarantined)
+    private static final int MAX_TRANSIENT_RETRIES = 2;
+    private static final long TRANSIENT_RETRY_BASE_MS = 1000;
+    private int transientRetries; // for the current track
+    private float retryAtSeconds;
+    private final Runnable retryCurrentTrack = () -> {
+        if (destroyed || youTubePlayer == null || currentIndex < 0 || currentIndex >= playlist.size()) return;
+        youTubePlayer.loadVideo(playlist.get(currentIndex).videoId, retryAtSeconds);
+    };
+    private static final long QUARANTINE_REPORT_DELAY_MS = 2000;
+    // After a trim drops the standby player, gapless waits this long before building it again
+    private static final long STANDBY_HOLD_OFF_MS = 5 * 60 * 1000;
+    private final Runnable quarantineReport = () -> uiChannel.postQuarantined(quarantine.drainUnreported());
+    private volatile boolean destroyed;
+
+    // FirstFragment tells us when the WebView is hidden so time ticks can be dropped
+    private final BroadcastReceiver uiVisibilityReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            uiChannel.setUiVisible(intent.getBooleanExtra(UiUpdateChannel.EXTRA_VISIBLE, true));
+        }
+    };
 
     private List<Song> playlist = new ArrayList<>();
     private int currentIndex = -1;
-    private MediaMetadataCompat currentMetadata;
+    // Shared snapshot for other threads; playlist/currentIndex stay the main thread's working copy
+    private final PlayerStateStore stateStore = new PlayerStateStore();
+    private volatile MediaMetadataCompat publishedMetadata; // written on main only
     private CountDownTimer sleepTimer;
 
     private static final String TAG = "StreamTuneDebug";
     private static final String CHANNEL_ID = "MusicPlayerChannel";
     private static final int NOTIFICATION_ID = 1;
     private String pendingVideoId = null;
+    private float pendingStartSeconds = 0;
+
+    // Session snapshot restored after a kill: the queue is back, the player is loaded lazily on play
+    private SessionStore sessionStore;
+    private BrowseTree browseTree;
+    private boolean sessionRestored;
+    private boolean resumePending;
+    private long resumePositionMs;
+    private boolean playWhenRestored;
+
+    private static final String PREFS_NAME = "player_prefs";
+    private static final String PREF_GAPLESS = "gapless_enabled";
+    private static final float GAPLESS_CUE_LEAD_SECONDS = 10f;
+
+    private PlayerSlot activeSlot;
+    private PlayerSlot standbySlot;
+    private boolean gaplessEnabled;
+    private long standbyHeldOffUntil; // uptime millis
+
+    private final AtomicInteger bridgeCommandsPending = new AtomicInteger();
+    private int requestTraceCookie; // main thread; TRACK_LOAD opened by startPlayback, not yet claimed by a track
+    private int trackTraceCookie; // main thread; the load being followed until PLAYING
 
     // Optional custom toggle (used on some old devices / custom ROMs)
     private static final String ACTION_TOGGLE = "ACTION_TOGGLE";
@@ -69,11 +138,19 @@ public class MusicPlayerService extends MediaBrowserServiceCompat implements Lif
     private final MediaSessionCompat.Callback mediaSessionCallback = new MediaSessionCompat.Callback() {
         @Override
         public void onPlay() {
+            if (!sessionRestored) {
+                // A media button can arrive before the snapshot is read back; replay it afterwards
+                playWhenRestored = true;
+            } else if (resumePending) {
+                mediaSession.setActive(true);
+                playSongAtIndex(resumePositionMs / 1000f);
+                return;
+            }
             mediaSession.setActive(true); // ✅ make session active on play
             long pos = getCurrentPositionSafe();
             updatePlaybackState(PlaybackStateCompat.STATE_BUFFERING, pos); // optimistic for old devices
             if (youTubePlayer != null) youTubePlayer.play();
-            startForeground(NOTIFICATION_ID, buildNotification());
+            postForeground();
         }
 
         @Override
@@ -81,13 +158,13 @@ public class MusicPlayerService extends MediaBrowserServiceCompat implements Lif
             if (youTubePlayer != null) youTubePlayer.pause();
             long pos = getCurrentPositionSafe();
             updatePlaybackState(PlaybackStateCompat.STATE_PAUSED, pos);
-            stopForeground(false);
-            updateNotification();
+            postStopForeground();
         }
 
         @Override
         public void onSeekTo(long pos) {
             if (youTubePlayer != null) youTubePlayer.seekTo(pos / 1000f);
+            playbackStatePublisher.seekTo(pos);
         }
 
         @Override
@@ -95,31 +172,45 @@ public class MusicPlayerService extends MediaBrowserServiceCompat implements Lif
             if (currentIndex < playlist.size() - 1) {
                 currentIndex++;
                 playSongAtIndex();
-                // If we're playing the second-to-last song, tell the web app to fetch more
-                if (currentIndex >= playlist.size() - 2) {
-                    try {
-                        broadcastUiUpdate(new JSONObject().put("fetchMore", true));
-                    } catch (Exception e) {
-                        Log.e(TAG, "Error broadcasting fetchMore", e);
-                    }
-                }
+                requestMoreIfNearEnd();
             } else {
                 // If there are truly no more songs and web hasn't sent a new playlist, stop.
-                stopSelf();
+                endSession();
             }
         }
 
         @Override
         public void onSkipToPrevious() {
-            if (currentIndex > 0) {
-                currentIndex--;
+            int previous = firstPlayableIndex(currentIndex - 1, -1);
+            if (previous >= 0) {
+                currentIndex = previous;
                 playSongAtIndex();
             }
         }
 
+        @Override
+        public void onPlayFromMediaId(String mediaId, Bundle extras) {
+            String parentId = BrowseTree.parentOf(mediaId);
+            String videoId = BrowseTree.videoIdOf(mediaId);
+            if (parentId == null) return;
+            if (!BrowseTree.QUEUE_ID.equals(parentId)) {
+                // Playing from recent or a saved playlist makes that list the queue
+                List<Song> songs = browseTree.getSongs(parentId);
+                if (songs == null || BrowseTree.find(songs, videoId) < 0) return;
+                replacePlaylist(songs);
+                // The page's newSongIndex and fetchMore handling only make sense against this queue
+                uiChannel.postQueue(stateStore.get().queue);
+            }
+            int index = BrowseTree.find(playlist, videoId);
+            if (index < 0) return;
+            currentIndex = index;
+            mediaSession.setActive(true);
+            playSongAtIndex();
+        }
+
         @Override
         public void onStop() {
-            stopSelf();
+            endSession();
         }
     };
 
@@ -128,9 +219,104 @@ public class MusicPlayerService extends MediaBrowserServiceCompat implements Lif
         super.onCreate();
         lifecycleRegistry.handleLifecycleEvent(Lifecycle.Event.ON_CREATE);
         lifecycleRegistry.handleLifecycleEvent(Lifecycle.Event.ON_START);
+        playbackThread = new HandlerThread("StreamTunePlayback", Process.THREAD_PRIORITY_AUDIO);
+        playbackThread.start();
+        playbackHandler = new Handler(playbackThread.getLooper());
+        if (BuildConfig.DEBUG) looperMonitor.install(Looper.getMainLooper(), null);
+        artworkCache = ArtworkCache.create(this);
+        artworkDecoder = ArtworkDecoder.forNotification(this);
+        prefetchScheduler = new PrefetchScheduler(this::loadArtwork);
+        networkPolicy = new NetworkPolicy(this, tier -> mainHandler.post(() -> {
+            if (destroyed) return;
+            prefetchScheduler.setLookahead(tier.lookahead);
+            // A slower tier may already want more songs for the track that is playing
+            requestMoreIfNearEnd();
+        }));
+        networkPolicy.start();
+        prefetchScheduler.setLookahead(networkPolicy.getTier().lookahead);
+        uiChannel = new UiUpdateChannel(this, mainHandler);
+        LocalBroadcastManager.getInstance(this).registerReceiver(
+                uiVisibilityReceiver, new IntentFilter(UiUpdateChannel.ACTION_UI_VISIBILITY));
         createNotificationChannel();
         initMediaSession();
         initYouTubePlayer();
+        sessionStore = new SessionStore(this, playbackHandler);
+        quarantine = new PlaybackQuarantine(this);
+        playbackHandler.post(quarantine::load);
+        browseTree = new BrowseTree(this, playbackHandler, this::notifyChildrenChanged);
+        library = LibraryStore.get(this);
+        registerTrimmables();
+        restoreSession();
+    }
+
+    /**
+     * What we give back under memory pressure, cheapest to rebuild first. The
+     * playing track, its session and the notification are never touched: losing
+     * them is exactly the kill we are trying to avoid.
+     */
+    private void registerTrimmables() {
+        resourceManager.register("prefetch", ResourceManager.GRADE_LIGHT, new ResourceManager.Trimmable() {
+            @Override
+            public long sizeBytes() {
+                return ResourceManager.UNKNOWN_SIZE;
+            }
+
+            @Override
+            public void trim(int grade) {
+                prefetchScheduler.cancel();
+            }
+        });
+        resourceManager.register("artwork", ResourceManager.GRADE_LIGHT, new ResourceManager.Trimmable() {
+            @Override
+            public long sizeBytes() {
+                return artworkCache.memorySize();
+            }
+
+            @Override
+            public void trim(int grade) {
+                if (grade >= ResourceManager.GRADE_HEAVY) {
+                    artworkCache.clearMemory();
+                } else {
+                    artworkCache.trimMemoryTo(grade >= ResourceManager.GRADE_MEDIUM ? 0.25f : 0.5f);
+                }
+            }
+        });
+        resourceManager.register("browse-cache", ResourceManager.GRADE_MEDIUM, new ResourceManager.Trimmable() {
+            @Override
+            public long sizeBytes() {
+                return ResourceManager.UNKNOWN_SIZE;
+            }
+
+            @Override
+            public void trim(int grade) {
+                browseTree.clearCache();
+            }
+        });
+        // A whole second WebView: the biggest single item, and only a nicety for gapless
+        resourceManager.register("standby-player", ResourceManager.GRADE_MEDIUM, new ResourceManager.Trimmable() {
+            @Override
+            public long sizeBytes() {
+                return ResourceManager.UNKNOWN_SIZE;
+            }
+
+            @Override
+            public void trim(int grade) {
+                if (standbySlot != null) releaseStandbyPlayer();
+                standbyHeldOffUntil = SystemClock.uptimeMillis() + STANDBY_HOLD_OFF_MS;
+            }
+        });
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        if (!destroyed) resourceManager.onTrimMemory(level);
+    }
+
+    @Override
+    public void onLowMemory() {
+        super.onLowMemory();
+        if (!destroyed) resourceManager.onLowMemory();
     }
 
     private void initMediaSession() {
@@ -145,193 +331,588 @@ public class MusicPlayerService extends MediaBrowserServiceCompat implements Lif
 
         mediaSession.setCallback(mediaSessionCallback);
         setSessionToken(mediaSession.getSessionToken());
+        playbackStatePublisher = new PlaybackStatePublisher(mediaSession);
+        notificationRenderer = new NotificationRenderer(this, playbackHandler, mediaSession.getSessionToken(),
+                CHANNEL_ID, NOTIFICATION_ID, stateStore::get);
         updatePlaybackState(PlaybackStateCompat.STATE_NONE, 0);
     }
 
     private void initYouTubePlayer() {
-        YouTubePlayerView youTubePlayerView = new YouTubePlayerView(this);
-        getLifecycle().addObserver(youTubePlayerView);
-        youTubePlayerView.setEnableAutomaticInitialization(false);
+        ActivityManager am = (ActivityManager) getSystemService(Context.ACTIVITY_SERVICE);
+        boolean lowRam = am != null && am.isLowRamDevice();
+        // Opening the preferences file is disk I/O; gapless stays off for the few ms until it is read
+        playbackHandler.post(() -> {
+            boolean enabled = getSharedPreferences(PREFS_NAME, MODE_PRIVATE).getBoolean(PREF_GAPLESS, !lowRam);
+            mainHandler.post(() -> gaplessEnabled = enabled);
+        });
+        activeSlot = new PlayerSlot();
+    }
 
-        IFramePlayerOptions options = new IFramePlayerOptions.Builder(this).controls(0).build();
+    /**
+     * One YouTubePlayerView and its listener. Only the active slot drives the session;
+     * the standby slot just cues the next song so ENDED can swap instead of load.
+     */
+    private final class PlayerSlot extends AbstractYouTubePlayerListener {
+        final YouTubePlayerView view;
+        YouTubePlayer player;
+        float duration;
+        String cuedVideoId;
 
-        youTubePlayerView.initialize(new AbstractYouTubePlayerListener() {
-            @Override
-            public void onReady(@NonNull YouTubePlayer player) {
-                youTubePlayer = player;
-                if (pendingVideoId != null) {
-                    player.loadVideo(pendingVideoId, 0);
-                    pendingVideoId = null;
-                }
+        PlayerSlot() {
+            view = new YouTubePlayerView(MusicPlayerService.this);
+            getLifecycle().addObserver(view);
+            view.setEnableAutomaticInitialization(false);
+            IFramePlayerOptions options = new IFramePlayerOptions.Builder(MusicPlayerService.this).controls(0).build();
+            view.initialize(this, true, options);
+        }
+
+        boolean isActive() {
+            return this == activeSlot;
+        }
+
+        void release() {
+            getLifecycle().removeObserver(view);
+            view.release();
+        }
+
+        @Override
+        public void onReady(@NonNull YouTubePlayer player) {
+            this.player = player;
+            if (!isActive()) return;
+            youTubePlayer = player;
+            if (pendingVideoId != null) {
+                player.loadVideo(pendingVideoId, pendingStartSeconds);
+                pendingVideoId = null;
             }
+        }
 
-            @Override
-            public void onStateChange(@NonNull YouTubePlayer player, @NonNull PlayerConstants.PlayerState state) {
-                try {
-                    long currentPosition = getCurrentPositionSafe();
-
-                    switch (state) {
-                        case PLAYING:
-                            mediaSession.setActive(true);
-                            updatePlaybackState(PlaybackStateCompat.STATE_PLAYING, currentPosition);
-                            startForeground(NOTIFICATION_ID, buildNotification());
-                            broadcastUiUpdate(new JSONObject().put("isPlaying", true));
-                            break;
-                        case PAUSED:
-                            updatePlaybackState(PlaybackStateCompat.STATE_PAUSED, currentPosition);
-                            stopForeground(false);
-                            updateNotification();
-                            broadcastUiUpdate(new JSONObject().put("isPlaying", false));
-                            break;
-                        case ENDED:
-                            mediaSessionCallback.onSkipToNext();
-                            break;
-                        case BUFFERING:
-                            updatePlaybackState(PlaybackStateCompat.STATE_BUFFERING, currentPosition);
-                            updateNotification();
-                            break;
-                        default:
-                            break;
-                    }
-                } catch (Exception e) {
-                    Log.e(TAG, "Error in onStateChange", e);
+        @Override
+        public void onStateChange(@NonNull YouTubePlayer player, @NonNull PlayerConstants.PlayerState state) {
+            if (!isActive()) return;
+            try {
+                long currentPosition = getCurrentPositionSafe();
+
+                switch (state) {
+                    case PLAYING:
+                        endTrackTrace();
+                        errorStreakCount = 0;
+                        transientRetries = 0;
+                        metrics.onPlaying();
+                        mediaSession.setActive(true);
+                        updatePlaybackState(PlaybackStateCompat.STATE_PLAYING, currentPosition);
+                        postForeground();
+                        uiChannel.postPlaying(true);
+                        break;
+                    case PAUSED:
+                        metrics.onStopped();
+                        updatePlaybackState(PlaybackStateCompat.STATE_PAUSED, currentPosition);
+                        postStopForeground();
+                        uiChannel.postPlaying(false);
+                        break;
+                    case ENDED:
+                        metrics.onStopped();
+                        if (!swapToStandby()) mediaSessionCallback.onSkipToNext();
+                        break;
+                    case BUFFERING:
+                        metrics.onBuffering();
+                        updatePlaybackState(PlaybackStateCompat.STATE_BUFFERING, currentPosition);
+                        updateNotification();
+                        break;
+                    default:
+                        break;
                 }
+            } catch (Exception e) {
+                Log.e(TAG, "Error in onStateChange", e);
             }
+        }
 
-            @Override
-            public void onError(@NonNull YouTubePlayer player, @NonNull PlayerConstants.PlayerError error) {
-                Log.e(TAG, "YouTube Player Error: " + error);
+        @Override
+        public void onError(@NonNull YouTubePlayer player, @NonNull PlayerConstants.PlayerError error) {
+            if (!isActive()) {
+                // A cue that failed just means ENDED falls back to a normal load
+                quarantineVideo(cuedVideoId, error);
+                cuedVideoId = null;
+                return;
             }
-
-            @Override
-            public void onCurrentSecond(@NonNull YouTubePlayer youTubePlayer, float second) {
-                if (mediaSession.getController() != null &&
-                        mediaSession.getController().getPlaybackState() != null &&
-                        mediaSession.getController().getPlaybackState().getState() == PlaybackStateCompat.STATE_PLAYING) {
-                    updatePlaybackState(PlaybackStateCompat.STATE_PLAYING, (long) (second * 1000));
-                }
-                try {
-                    broadcastUiUpdate(new JSONObject().put("currentTime", second));
-                } catch (Exception e) {
-                    Log.e(TAG, "Error broadcasting current time", e);
-                }
+            Log.e(TAG, "YouTube Player Error: " + error);
+            metrics.onError();
+            if (!PlaybackQuarantine.isPermanent(error) && transientRetries < MAX_TRANSIENT_RETRIES) {
+                // Probably the network, not the video: hold position and try the same track again
+                long position = getCurrentPositionSafe();
+                retryAtSeconds = position / 1000f;
+                long delay = TRANSIENT_RETRY_BASE_MS << transientRetries;
+                transientRetries++;
+                updatePlaybackState(PlaybackStateCompat.STATE_BUFFERING, position);
+                mainHandler.removeCallbacks(retryCurrentTrack);
+                mainHandler.postDelayed(retryCurrentTrack, delay);
+                return;
             }
+            if (currentIndex >= 0 && currentIndex < playlist.size()) {
+                quarantineVideo(playlist.get(currentIndex).videoId, error);
+            }
+            endTrackTrace();
+            skipAfterError();
+        }
 
-            @Override
-            public void onVideoDuration(@NonNull YouTubePlayer youTubePlayer, float duration) {
-                if (currentMetadata == null) return;
-                MediaMetadataCompat.Builder builder = new MediaMetadataCompat.Builder(currentMetadata);
-                builder.putLong(MediaMetadataCompat.METADATA_KEY_DURATION, (long) duration * 1000);
-                currentMetadata = builder.build();
-                mediaSession.setMetadata(currentMetadata);
+        @Override
+        public void onCurrentSecond(@NonNull YouTubePlayer youTubePlayer, float second) {
+            if (!isActive()) return;
+            // Ticks that match the session's own extrapolation are suppressed by the publisher
+            if (playbackStatePublisher.getState() == PlaybackStateCompat.STATE_PLAYING) {
+                updatePlaybackState(PlaybackStateCompat.STATE_PLAYING, (long) (second * 1000));
             }
-        }, true, options);
+            uiChannel.postCurrentTime(second);
+            sessionStore.setPosition(currentIndex, (long) (second * 1000));
+            maybeCueNext(second);
+        }
+
+        @Override
+        public void onVideoDuration(@NonNull YouTubePlayer youTubePlayer, float duration) {
+            this.duration = duration;
+            if (isActive()) applyDuration(duration);
+        }
+    }
+
+    private void applyDuration(float duration) {
+        stateStore.update(s -> s.metadata == null ? s : s.withMetadata(new MediaMetadataCompat.Builder(s.metadata)
+                .putLong(MediaMetadataCompat.METADATA_KEY_DURATION, (long) (duration * 1000))
+                .build()));
+        publishMetadata();
+    }
+
+    /**
+     * Main thread: pushes the snapshot's metadata to the session and notification.
+     * Updates from any thread end here, so the session only ever moves forward to
+     * the latest snapshot; intermediate ones are skipped.
+     */
+    private void publishMetadata() {
+        MediaMetadataCompat metadata = stateStore.get().metadata;
+        if (destroyed || metadata == null || metadata == publishedMetadata) return;
+        publishedMetadata = metadata;
+        mediaSession.setMetadata(metadata);
+        updateNotification();
+    }
+
+    // Main thread: copies the working queue into the shared snapshot, once per change
+    private List<Song> publishQueue() {
+        PlaybackTrace.counter(PlaybackTrace.COUNTER_QUEUE_SIZE, playlist.size());
+        return stateStore.update(s -> s.withQueue(playlist, currentIndex)).queue;
+    }
+
+    // Cue the next song on the standby player during the last few seconds of this one
+    private void maybeCueNext(float second) {
+        if (!gaplessEnabled || activeSlot.duration <= 0
+                || activeSlot.duration - second > GAPLESS_CUE_LEAD_SECONDS) return;
+        int nextIndex = firstPlayableIndex(currentIndex + 1, 1);
+        if (nextIndex < 0 || standbySlot == null || standbySlot.player == null) return;
+        String nextVideoId = playlist.get(nextIndex).videoId;
+        if (nextVideoId.equals(standbySlot.cuedVideoId)) return;
+        standbySlot.cuedVideoId = nextVideoId;
+        standbySlot.player.cueVideo(nextVideoId, 0);
+    }
+
+    // Called on ENDED: start the already-cued standby player instead of loading from scratch
+    private boolean swapToStandby() {
+        PlayerSlot next = standbySlot;
+        int nextIndex = firstPlayableIndex(currentIndex + 1, 1);
+        if (!gaplessEnabled || next == null || next.player == null || next.cuedVideoId == null
+                || nextIndex < 0 || !next.cuedVideoId.equals(playlist.get(nextIndex).videoId)) {
+            return false;
+        }
+        standbySlot = activeSlot;
+        standbySlot.cuedVideoId = null;
+        activeSlot = next;
+        next.cuedVideoId = null;
+        youTubePlayer = next.player;
+        currentIndex = nextIndex;
+        mainHandler.removeCallbacks(retryCurrentTrack);
+        transientRetries = 0;
+        metrics.markTrackLoad();
+        beginTrackTrace();
+
+        PlaybackTrace.beginAsync(PlaybackTrace.PLAYER_START, trackTraceCookie);
+        youTubePlayer.play();
+        onTrackStarted(playlist.get(currentIndex));
+        if (next.duration > 0) applyDuration(next.duration);
+        requestMoreIfNearEnd();
+        return true;
+    }
+
+    private void setGaplessEnabled(boolean enabled) {
+        gaplessEnabled = enabled;
+        playbackHandler.post(() -> getSharedPreferences(PREFS_NAME, MODE_PRIVATE).edit().putBoolean(PREF_GAPLESS, enabled).apply());
+        if (!enabled) releaseStandbyPlayer();
+    }
+
+    /** Drops the standby WebView; it is recreated on the next track start if gapless is on. */
+    private void releaseStandbyPlayer() {
+        if (standbySlot == null) return;
+        standbySlot.release();
+        standbySlot = null;
     }
 
     @Override
     public int onStartCommand(Intent intent, int flags, int startId) {
         // ✅ Handle explicit intents first (important for old Android & custom ROMs)
         if (intent != null && intent.getAction() != null) {
-            String action = intent.getAction();
-            switch (action) {
-                case "PLAY_PLAYLIST": {
-                    String playlistJson = intent.getStringExtra("PLAYLIST_JSON");
-                    currentIndex = intent.getIntExtra("CURRENT_INDEX", -1);
-                    parsePlaylist(playlistJson);
-                    playSongAtIndex();
-                    break;
-                }
-                case "SET_SLEEP_TIMER": {
-                    long duration = intent.getLongExtra("SLEEP_TIMER_DURATION", 0);
-                    handleSleepTimer(duration);
-                    break;
+            PlaybackTrace.counter(PlaybackTrace.COUNTER_BRIDGE_COMMANDS, bridgeCommandsPending.incrementAndGet());
+            // Every command goes through the playback thread so payload decoding stays off main,
+            // then back to main for the player. Both queues are FIFO, so command order is kept.
+            playbackHandler.post(() -> {
+                if ("SET_SAVED_PLAYLISTS".equals(intent.getAction())) {
+                    // Library data only feeds the browse tree; no main-thread state involved
+                    Reader reader = PlaylistHandoff.open(this, intent, "PLAYLIST_JSON");
+                    if (reader != null) browseTree.setSavedPlaylists(reader);
+                    PlaybackTrace.counter(PlaybackTrace.COUNTER_BRIDGE_COMMANDS, bridgeCommandsPending.decrementAndGet());
+                    return;
                 }
-                case "ACTION_PLAY":
-                    mediaSessionCallback.onPlay();
-                    break;
-                case "ACTION_PAUSE":
-                    mediaSessionCallback.onPause();
-                    break;
-                case ACTION_TOGGLE: {
-                    PlaybackStateCompat ps = mediaSession.getController().getPlaybackState();
-                    int st = (ps != null) ? ps.getState() : PlaybackStateCompat.STATE_NONE;
-                    if (st == PlaybackStateCompat.STATE_PLAYING || st == PlaybackStateCompat.STATE_BUFFERING) {
-                        mediaSessionCallback.onPause();
-                    } else {
-                        mediaSessionCallback.onPlay();
+                final List<Song> songs = carriesSongs(intent.getAction()) ? parseSongs(intent) : null;
+                mainHandler.post(() -> {
+                    if (destroyed) return;
+                    long start = System.nanoTime();
+                    int cookie = intent.getIntExtra(PlaybackTrace.EXTRA_COOKIE, 0);
+                    PlaybackTrace.endAsync(PlaybackTrace.BRIDGE_DISPATCH, cookie);
+                    requestTraceCookie = cookie;
+                    boolean traced = PlaybackTrace.begin("MusicPlayerService.handleCommand");
+                    try {
+                        handleCommand(intent, songs);
+                    } finally {
+                        PlaybackTrace.end(traced);
                     }
-                    break;
-                }
-                case "ACTION_SEEK_TO": {
-                    long pos = intent.getLongExtra("SEEK_TO_POSITION", 0);
-                    mediaSessionCallback.onSeekTo(pos);
-                    break;
-                }
-                case "ACTION_SKIP_TO_NEXT":
-                    mediaSessionCallback.onSkipToNext();
-                    break;
-                case "ACTION_SKIP_TO_PREVIOUS":
-                    mediaSessionCallback.onSkipToPrevious();
-                    break;
-                default:
-                    break;
-            }
+                    // A request that never got as far as a track (empty queue, say) ends here
+                    PlaybackTrace.endAsync(PlaybackTrace.TRACK_LOAD, requestTraceCookie);
+                    requestTraceCookie = 0;
+                    PlaybackTrace.counter(PlaybackTrace.COUNTER_BRIDGE_COMMANDS, bridgeCommandsPending.decrementAndGet());
+                    looperMonitor.recordCommand(intent.getAction(), System.nanoTime() - start);
+                });
+            });
         }
 
         // ✅ Also let MediaButtonReceiver translate hardware/media-notification events
         MediaButtonReceiver.handleIntent(mediaSession, intent);
-        return START_NOT_STICKY;
+        // Sticky so a low-memory kill brings us back with the restored session
+        return START_STICKY;
+    }
+
+    private static boolean carriesSongs(String action) {
+        return "PLAY_PLAYLIST".equals(action) || "QUEUE_APPEND".equals(action) || "QUEUE_INSERT".equals(action);
+    }
+
+    // Runs on the main thread; songs is the pre-parsed payload for playlist actions
+    private void handleCommand(Intent intent, @Nullable List<Song> songs) {
+        String action = intent.getAction();
+        switch (action) {
+            case "PLAY_PLAYLIST": {
+                metrics.markStartRequested(intent.getLongExtra("REQUESTED_AT", SystemClock.uptimeMillis()));
+                currentIndex = intent.getIntExtra("CURRENT_INDEX", -1);
+                replacePlaylist(songs);
+                playSongAtIndex();
+                break;
+            }
+            case "QUEUE_APPEND": {
+                appendToQueue(songs);
+                break;
+            }
+            case "QUEUE_INSERT": {
+                int index = intent.getIntExtra("QUEUE_INDEX", playlist.size());
+                insertIntoQueue(index, songs);
+                break;
+            }
+            case "QUEUE_REMOVE": {
+                removeFromQueue(intent.getIntExtra("QUEUE_INDEX", -1));
+                break;
+            }
+            case "QUEUE_MOVE": {
+                moveInQueue(intent.getIntExtra("QUEUE_FROM", -1), intent.getIntExtra("QUEUE_TO", -1));
+                break;
+            }
+            case "SET_GAPLESS": {
+                setGaplessEnabled(intent.getBooleanExtra("GAPLESS_ENABLED", true));
+                break;
+            }
+            case "SET_SLEEP_TIMER": {
+                long duration = intent.getLongExtra("SLEEP_TIMER_DURATION", 0);
+                handleSleepTimer(duration);
+                break;
+            }
+            case "ACTION_PLAY":
+                mediaSessionCallback.onPlay();
+                break;
+            case "ACTION_PAUSE":
+                mediaSessionCallback.onPause();
+                break;
+            case ACTION_TOGGLE: {
+                int st = playbackStatePublisher.getState();
+                if (st == PlaybackStateCompat.STATE_PLAYING || st == PlaybackStateCompat.STATE_BUFFERING) {
+                    mediaSessionCallback.onPause();
+                } else {
+                    mediaSessionCallback.onPlay();
+                }
+                break;
+            }
+            case "ACTION_SEEK_TO": {
+                long pos = intent.getLongExtra("SEEK_TO_POSITION", 0);
+                mediaSessionCallback.onSeekTo(pos);
+                break;
+            }
+            case "ACTION_SKIP_TO_NEXT":
+                mediaSessionCallback.onSkipToNext();
+                break;
+            case "ACTION_SKIP_TO_PREVIOUS":
+                mediaSessionCallback.onSkipToPrevious();
+                break;
+            default:
+                break;
+        }
     }
 
     private void handleSleepTimer(long durationInMillis) {
         if (sleepTimer != null) sleepTimer.cancel();
+        sessionStore.setSleepDeadline(durationInMillis > 0 ? System.currentTimeMillis() + durationInMillis : 0);
         if (durationInMillis <= 0) return;
 
         sleepTimer = new CountDownTimer(durationInMillis, 1000) {
             @Override public void onTick(long millisUntilFinished) {}
-            @Override public void onFinish() { mediaSessionCallback.onPause(); }
+            @Override public void onFinish() {
+                sessionStore.setSleepDeadline(0);
+                mediaSessionCallback.onPause();
+            }
         }.start();
     }
 
-    private void parsePlaylist(String json) {
+    private void restoreSession() {
+        playbackHandler.post(() -> {
+            SessionStore.Session session = sessionStore.restore();
+            mainHandler.post(() -> {
+                sessionRestored = true;
+                if (session != null && !destroyed) applyRestoredSession(session);
+                if (playWhenRestored) {
+                    playWhenRestored = false;
+                    mediaSessionCallback.onPlay();
+                }
+            });
+        });
+    }
+
+    // Shows the restored track as paused; nothing is loaded into the player until play
+    private void applyRestoredSession(SessionStore.Session session) {
+        if (!playlist.isEmpty() || session.index < 0 || session.index >= session.queue.size()) return;
+        playlist.addAll(session.queue);
+        currentIndex = session.index;
+        publishQueue();
+        resumePending = true;
+        resumePositionMs = session.positionMs;
+
+        Song song = playlist.get(currentIndex);
+        updateMetadata(song.title, song.artist, song.thumbnailUrl);
+        updatePlaybackState(PlaybackStateCompat.STATE_PAUSED, resumePositionMs);
+        postStopForeground();
+
+        long remaining = session.sleepDeadlineMs - System.currentTimeMillis();
+        if (session.sleepDeadlineMs > 0 && remaining > 0) handleSleepTimer(remaining);
+    }
+
+    private void replacePlaylist(List<Song> songs) {
+        prefetchScheduler.cancel();
         playlist.clear();
-        try {
-            JSONArray jsonArray = new JSONArray(json);
-            for (int i = 0; i < jsonArray.length(); i++) {
-                JSONObject o = jsonArray.getJSONObject(i);
-                Song song = new Song();
-                song.videoId = o.optString("videoId");
-                song.title = o.optString("title");
-                song.artist = o.optString("artist");
-                song.thumbnailUrl = o.optString("thumbnailUrl");
-                playlist.add(song);
-            }
-        } catch (Exception e) {
-            Log.e(TAG, "Failed to parse playlist JSON", e);
+        playlist.addAll(songs);
+        sessionStore.setQueue(publishQueue());
+        browseTree.invalidate(BrowseTree.QUEUE_ID);
+    }
+
+    // Runs on the playback thread. Large payloads arrive as a PlaylistHandoff version instead of an inline extra
+    private List<Song> parseSongs(Intent intent) {
+        Reader reader = PlaylistHandoff.open(this, intent, "PLAYLIST_JSON");
+        if (reader == null) return new ArrayList<>();
+        PlaylistParser.Result result = PlaylistParser.parse(reader);
+        if (result.malformedCount > 0 || result.truncated) {
+            Log.w(TAG, "Playlist had " + result.malformedCount + " malformed entries"
+                    + (result.truncated ? " and was truncated" : ""));
+        }
+        return result.songs;
+    }
+
+    // Incremental queue edits. None of these touch the player; they only keep
+    // currentIndex pointing at the song that is already playing.
+
+    private void appendToQueue(List<Song> songs) {
+        if (songs.isEmpty()) return;
+        playlist.addAll(songs);
+        onQueueChanged();
+    }
+
+    private void insertIntoQueue(int index, List<Song> songs) {
+        if (songs.isEmpty()) return;
+        index = Math.max(0, Math.min(index, playlist.size()));
+        playlist.addAll(index, songs);
+        if (currentIndex >= index) currentIndex += songs.size();
+        onQueueChanged();
+    }
+
+    private void removeFromQueue(int index) {
+        if (index < 0 || index >= playlist.size()) return;
+        playlist.remove(index);
+        // Removing the playing song lets it finish; the next skip lands on whatever took its slot
+        if (currentIndex >= index) currentIndex--;
+        onQueueChanged();
+    }
+
+    private void moveInQueue(int from, int to) {
+        if (from < 0 || from >= playlist.size() || to < 0 || to >= playlist.size() || from == to) return;
+        playlist.add(to, playlist.remove(from));
+        if (currentIndex == from) {
+            currentIndex = to;
+        } else if (from < currentIndex && to >= currentIndex) {
+            currentIndex--;
+        } else if (from > currentIndex && to <= currentIndex) {
+            currentIndex++;
+        }
+        onQueueChanged();
+    }
+
+    private void onQueueChanged() {
+        sessionStore.setQueue(publishQueue());
+        browseTree.invalidate(BrowseTree.QUEUE_ID);
+        sessionStore.setPosition(currentIndex, getCurrentPositionSafe());
+        if (currentIndex >= 0 && currentIndex < playlist.size()) {
+            prefetchScheduler.schedule(playlist, currentIndex);
+        } else {
+            prefetchScheduler.cancel();
         }
     }
 
     private void playSongAtIndex() {
+        playSongAtIndex(0);
+    }
+
+    private void playSongAtIndex(float startSeconds) {
+        boolean traced = PlaybackTrace.begin("MusicPlayerService.playSongAtIndex");
+        try {
+            loadSongAtIndex(startSeconds);
+        } finally {
+            PlaybackTrace.end(traced);
+        }
+    }
+
+    private void loadSongAtIndex(float startSeconds) {
+        mainHandler.removeCallbacks(retryCurrentTrack);
+        transientRetries = 0;
         if (playlist.isEmpty() || currentIndex < 0 || currentIndex >= playlist.size()) {
-            stopSelf();
+            endSession();
             return;
         }
+        resumePending = false;
+        int playable = firstPlayableIndex(currentIndex, 1);
+        if (playable < 0) {
+            // Nothing left that is known to play; same as running off the end of the queue
+            endSession();
+            return;
+        }
+        if (playable != currentIndex) {
+            currentIndex = playable;
+            startSeconds = 0;
+        }
         Song currentSong = playlist.get(currentIndex);
-        updateMetadata(currentSong.title, currentSong.artist, currentSong.thumbnailUrl);
-
-        updatePlaybackState(PlaybackStateCompat.STATE_BUFFERING, 0);
-        startForeground(NOTIFICATION_ID, buildNotification());
+        activeSlot.duration = 0;
+        metrics.markTrackLoad();
+        beginTrackTrace();
+        onTrackStarted(currentSong);
 
+        // Until the player is ready this also covers its initialization
+        PlaybackTrace.beginAsync(PlaybackTrace.PLAYER_START, trackTraceCookie);
         if (youTubePlayer != null) {
-            youTubePlayer.loadVideo(currentSong.videoId, 0);
+            boolean traced = PlaybackTrace.begin("YouTubePlayer.loadVideo");
+            try {
+                youTubePlayer.loadVideo(currentSong.videoId, startSeconds);
+            } finally {
+                PlaybackTrace.end(traced);
+            }
         } else {
             pendingVideoId = currentSong.videoId;
+            pendingStartSeconds = startSeconds;
         }
+    }
 
-        try {
-            broadcastUiUpdate(new JSONObject().put("newSongIndex", currentIndex));
-        } catch (Exception e) {
-            Log.e(TAG, "Error broadcasting new song index", e);
+    // Claims the bridge's slice if this track came from startPlayback; a load skipped before it played just ends
+    private void beginTrackTrace() {
+        endTrackTrace();
+        trackTraceCookie = requestTraceCookie != 0
+                ? requestTraceCookie : PlaybackTrace.beginAsync(PlaybackTrace.TRACK_LOAD);
+        requestTraceCookie = 0;
+    }
+
+    private void endTrackTrace() {
+        PlaybackTrace.endAsync(PlaybackTrace.PLAYER_START, trackTraceCookie);
+        PlaybackTrace.endAsync(PlaybackTrace.TRACK_LOAD, trackTraceCookie);
+        trackTraceCookie = 0;
+    }
+
+    // An explicit stop or the end of the queue: nothing to resume after the next start
+    private void endSession() {
+        sessionStore.clear();
+        stopSelf();
+    }
+
+    // Everything that follows a track change except telling a player what to play
+    private void onTrackStarted(Song song) {
+        updateMetadata(song.title, song.artist, song.thumbnailUrl);
+        browseTree.onPlayed(song);
+        library.recordPlayAsync(song.videoId, System.currentTimeMillis());
+        // Warm the neighbours now so next/previous can publish artwork straight from memory
+        prefetchScheduler.schedule(playlist, currentIndex);
+
+        updatePlaybackState(PlaybackStateCompat.STATE_BUFFERING, 0);
+        postForeground();
+        uiChannel.postNewSongIndex(currentIndex);
+        sessionStore.setPosition(currentIndex, 0);
+
+        // Bring the standby player up early; an iframe can take seconds to become ready
+        if (gaplessEnabled && standbySlot == null && SystemClock.uptimeMillis() >= standbyHeldOffUntil) {
+            standbySlot = new PlayerSlot();
+        }
+    }
+
+    /**
+     * First index from start, walking by step, with a video id that isn't quarantined; -1 if none.
+     * The parser keeps malformed entries as empty placeholders, and those are skipped here too.
+     */
+    private int firstPlayableIndex(int start, int step) {
+        for (int i = start; i >= 0 && i < playlist.size(); i += step) {
+            String videoId = playlist.get(i).videoId;
+            if (videoId != null && !videoId.isEmpty() && !quarantine.isQuarantined(videoId)) return i;
+        }
+        return -1;
+    }
+
+    private void quarantineVideo(@Nullable String videoId, PlayerConstants.PlayerError error) {
+        // Only permanent errors quarantine; nothing to report otherwise
+        if (!quarantine.add(videoId, error)) return;
+        // IDs failing in quick succession (a dead imported playlist) go to the web app together
+        mainHandler.removeCallbacks(quarantineReport);
+        mainHandler.postDelayed(quarantineReport, QUARANTINE_REPORT_DELAY_MS);
+    }
+
+    // Moves on from a failed track unless failures have eaten the whole budget, e.g. while offline
+    private void skipAfterError() {
+        long now = SystemClock.uptimeMillis();
+        if (errorStreakCount == 0) errorStreakStartedAt = now;
+        errorStreakCount++;
+        if (errorStreakCount > MAX_ERROR_SKIPS || now - errorStreakStartedAt > ERROR_SKIP_BUDGET_MS) {
+            Log.w(TAG, "Giving up after " + (errorStreakCount - 1) + " failed tracks");
+            errorStreakCount = 0;
+            updatePlaybackState(PlaybackStateCompat.STATE_PAUSED, 0);
+            postStopForeground();
+            uiChannel.postPlaying(false);
+            return;
+        }
+        mediaSessionCallback.onSkipToNext();
+    }
+
+    // Near the end of the queue, tell the web app to fetch more; slow links ask earlier
+    private void requestMoreIfNearEnd() {
+        if (currentIndex < 0 || playlist.isEmpty()) return;
+        if (currentIndex >= playlist.size() - networkPolicy.getTier().fetchMoreThreshold) {
+            uiChannel.postFetchMore();
         }
     }
 
@@ -340,135 +921,131 @@ public class MusicPlayerService extends MediaBrowserServiceCompat implements Lif
                 .putString(MediaMetadataCompat.METADATA_KEY_TITLE, title)
                 .putString(MediaMetadataCompat.METADATA_KEY_ARTIST, artist);
 
-        currentMetadata = metadataBuilder.build();
-        mediaSession.setMetadata(currentMetadata);
-        updateNotification();
+        boolean hasThumbnail = thumbnailUrl != null && !thumbnailUrl.isEmpty();
+        Bitmap cached = hasThumbnail ? artworkCache.getBitmap(networkPolicy.artworkUrl(thumbnailUrl)) : null;
+        if (cached != null) {
+            // Memory hit: publish artwork together with the title, no executor round trip
+            metadataBuilder.putBitmap(MediaMetadataCompat.METADATA_KEY_ALBUM_ART, cached);
+        }
 
-        if (thumbnailUrl != null && !thumbnailUrl.isEmpty()) {
-            executorService.submit(() -> {
-                try {
-                    URL url = new URL(thumbnailUrl);
-                    HttpURLConnection connection = (HttpURLConnection) url.openConnection();
-                    connection.setDoInput(true);
-                    connection.connect();
-                    InputStream input = connection.getInputStream();
-                    Bitmap bitmap = BitmapFactory.decodeStream(input);
-                    if (bitmap != null) {
-                        metadataBuilder.putBitmap(MediaMetadataCompat.METADATA_KEY_ALBUM_ART, bitmap);
-                        currentMetadata = metadataBuilder.build();
-                        mediaSession.setMetadata(currentMetadata);
-                        updateNotification();
-                    }
-                } catch (Exception e) {
-                    Log.e(TAG, "Error downloading artwork", e);
-                }
+        MediaMetadataCompat metadata = metadataBuilder.build();
+        final long trackGeneration = stateStore.update(s -> s.withTrack(currentIndex, metadata)).trackGeneration;
+        publishMetadata();
+
+        // Whatever the previous track was still fetching no longer matters
+        if (hasThumbnail && cached == null) {
+            artworkFetcher.submitForTrack(token -> {
+                Bitmap bitmap = loadArtwork(thumbnailUrl, token);
+                if (bitmap == null || token.isCancelled()) return;
+                // Lands on whatever the snapshot holds now (a duration may be there already), same track only
+                stateStore.update(s -> s.trackGeneration != trackGeneration || s.metadata == null ? s
+                        : s.withMetadata(new MediaMetadataCompat.Builder(s.metadata)
+                                .putBitmap(MediaMetadataCompat.METADATA_KEY_ALBUM_ART, bitmap)
+                                .build()));
+                mainHandler.post(this::publishMetadata);
             });
+        } else {
+            artworkFetcher.cancelTrack();
         }
     }
 
-    private void updateNotification() {
-        if (mediaSession.getController() == null || mediaSession.getController().getPlaybackState() == null) return;
-        NotificationManager nm = (NotificationManager) getSystemService(Context.NOTIFICATION_SERVICE);
-        if (nm != null) {
-            nm.notify(NOTIFICATION_ID, buildNotification());
+    /**
+     * Runs on a fetch thread: memory -> disk -> network, populating both tiers on the way back.
+     * Both tiers are keyed by the size variant the current network tier asks for, so a small
+     * copy fetched on a slow link is not what gets shown once the link is fast again. If that
+     * variant can't be had, any other size already on disk is better than no artwork.
+     */
+    @Nullable
+    private Bitmap loadArtwork(String thumbnailUrl, ArtworkFetcher.Token token) throws Exception {
+        String url = networkPolicy.artworkUrl(thumbnailUrl);
+        Bitmap bitmap = artworkCache.getBitmap(url);
+        if (bitmap != null) return bitmap;
+
+        // A revalidation that replaces these bytes mid-decode must win over the decode
+        long generation = artworkCache.generation(url);
+        byte[] data = artworkCache.getBytes(url);
+        if (data == null) {
+            data = downloadArtwork(url, null, token);
+        } else {
+            revalidateArtwork(url);
+        }
+        if (data == null) {
+            if (token.isCancelled()) return null;
+            for (String variant : NetworkPolicy.artworkVariants(thumbnailUrl)) {
+                if (variant.equals(url)) continue;
+                bitmap = artworkCache.getBitmap(variant);
+                if (bitmap != null) return bitmap;
+                long variantGeneration = artworkCache.generation(variant);
+                data = artworkCache.getBytes(variant);
+                if (data != null) {
+                    // Kept under its own key, so the wanted variant is still fetched next time
+                    url = variant;
+                    generation = variantGeneration;
+                    break;
+                }
+            }
+            if (data == null) return null;
         }
+        // Decoding is the expensive part; skip it for a track that is already gone
+        if (token.isCancelled()) return null;
+        bitmap = artworkDecoder.decode(data);
+        // Nor let a stale prefetch push the current artwork out of memory
+        if (token.isCancelled()) return null;
+        artworkCache.putBitmap(url, bitmap, generation);
+        return bitmap;
     }
 
-    private Notification buildNotification() {
-        PlaybackStateCompat playbackState = mediaSession.getController().getPlaybackState();
-        int state = (playbackState == null) ? PlaybackStateCompat.STATE_NONE : playbackState.getState();
-
-        MediaMetadataCompat metadata = mediaSession.getController().getMetadata();
-        String title = "StreamTune";
-        String artist = "Loading...";
-        Bitmap artwork = null;
-
-        if (metadata != null) {
-            title = metadata.getString(MediaMetadataCompat.METADATA_KEY_TITLE);
-            artist = metadata.getString(MediaMetadataCompat.METADATA_KEY_ARTIST);
-            artwork = metadata.getBitmap(MediaMetadataCompat.METADATA_KEY_ALBUM_ART);
+    /**
+     * Fetches artwork into the disk tier, conditionally when validators are given.
+     * Returns the new bytes, or null on failure, cancellation or 304. thumbnailUrl is
+     * the size variant itself, and the key it is cached under.
+     */
+    @Nullable
+    private byte[] downloadArtwork(String thumbnailUrl, @Nullable ArtworkCache.Validators validators,
+                                   ArtworkFetcher.Token token) throws IOException {
+        ArtworkFetcher.Response response = artworkFetcher.download(thumbnailUrl, validators, token);
+        if (response == null) return null;
+        if (response.isNotModified()) {
+            // Servers may omit validators on a 304; keep the ones we sent
+            artworkCache.putValidators(thumbnailUrl,
+                    response.etag != null ? response.etag : validators != null ? validators.etag : null,
+                    response.lastModified != null ? response.lastModified : validators != null ? validators.lastModified : null);
+            return null;
         }
-
-        // Open app when tapping notification
-        PendingIntent contentIntent = PendingIntent.getActivity(
-                this, 0,
-                new Intent(this, MainActivity.class),
-                (Build.VERSION.SDK_INT >= 26)
-                        ? PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE
-                        : PendingIntent.FLAG_UPDATE_CURRENT
-        );
-
-        NotificationCompat.Action prevAction = new NotificationCompat.Action(
-                R.drawable.ic_previous, "Previous",
-                MediaButtonReceiver.buildMediaButtonPendingIntent(this, PlaybackStateCompat.ACTION_SKIP_TO_PREVIOUS));
-
-        NotificationCompat.Action playPauseAction =
-                (state == PlaybackStateCompat.STATE_PLAYING || state == PlaybackStateCompat.STATE_BUFFERING)
-                        ? new NotificationCompat.Action(
-                        R.drawable.ic_pause, "Pause",
-                        MediaButtonReceiver.buildMediaButtonPendingIntent(this, PlaybackStateCompat.ACTION_PAUSE))
-                        : new NotificationCompat.Action(
-                        R.drawable.ic_play, "Play",
-                        MediaButtonReceiver.buildMediaButtonPendingIntent(this, PlaybackStateCompat.ACTION_PLAY));
-
-        NotificationCompat.Action nextAction = new NotificationCompat.Action(
-                R.drawable.ic_next, "Next",
-                MediaButtonReceiver.buildMediaButtonPendingIntent(this, PlaybackStateCompat.ACTION_SKIP_TO_NEXT));
-
-        NotificationCompat.Builder builder = new NotificationCompat.Builder(this, CHANNEL_ID)
-                .setContentTitle(title)
-                .setContentText(artist)
-                .setLargeIcon(artwork)
-                .setSmallIcon(R.drawable.ic_music_note)
-                .setContentIntent(contentIntent)
-                .setDeleteIntent(MediaButtonReceiver.buildMediaButtonPendingIntent(this, PlaybackStateCompat.ACTION_STOP))
-                .setVisibility(NotificationCompat.VISIBILITY_PUBLIC)
-                .setCategory(NotificationCompat.CATEGORY_TRANSPORT)
-                .setOngoing(state == PlaybackStateCompat.STATE_PLAYING || state == PlaybackStateCompat.STATE_BUFFERING)
-                // ✅ High priority helps old Android show media-style actions reliably
-                .setPriority(NotificationCompat.PRIORITY_HIGH)
-                .addAction(prevAction)
-                .addAction(playPauseAction)
-                .addAction(nextAction)
-                .setStyle(new androidx.media.app.NotificationCompat.MediaStyle()
-                        .setMediaSession(mediaSession.getSessionToken())
-                        .setShowActionsInCompactView(0, 1, 2));
-
-        return builder.build();
+        networkPolicy.recordDownload(response.body.length, response.transferNanos);
+        artworkCache.putBytes(thumbnailUrl, response.body, response.etag, response.lastModified);
+        return response.body;
     }
 
-    private void updatePlaybackState(int state, long position) {
-        long actions =
-                PlaybackStateCompat.ACTION_PLAY |
-                        PlaybackStateCompat.ACTION_PAUSE |
-                        PlaybackStateCompat.ACTION_PLAY_PAUSE |   // ✅ toggles on old Android
-                        PlaybackStateCompat.ACTION_STOP |
-                        PlaybackStateCompat.ACTION_SKIP_TO_NEXT |
-                        PlaybackStateCompat.ACTION_SKIP_TO_PREVIOUS |
-                        PlaybackStateCompat.ACTION_SEEK_TO;
+    // A disk hit is shown as is; an old one is checked in the background for the next time it's decoded
+    private void revalidateArtwork(String thumbnailUrl) {
+        ArtworkCache.Validators validators = artworkCache.getValidators(thumbnailUrl);
+        if (validators == null || !validators.isStale()) return;
+        artworkFetcher.submitBackground(token -> {
+            if (downloadArtwork(thumbnailUrl, validators, token) != null) artworkCache.removeBitmap(thumbnailUrl);
+        });
+    }
 
-        float playbackSpeed = (state == PlaybackStateCompat.STATE_PLAYING) ? 1.0f : 0f;
+    // Rendering, diffing and foreground transitions all run on the playback thread
+    private void updateNotification() {
+        notificationRenderer.requestUpdate();
+    }
 
-        PlaybackStateCompat.Builder stateBuilder = new PlaybackStateCompat.Builder()
-                .setActions(actions)
-                .setState(state, position, playbackSpeed);
+    private void postForeground() {
+        notificationRenderer.startForeground();
+    }
 
-        mediaSession.setPlaybackState(stateBuilder.build());
+    private void postStopForeground() {
+        notificationRenderer.stopForeground();
     }
 
-    private long getCurrentPositionSafe() {
-        try {
-            PlaybackStateCompat ps = mediaSession.getController().getPlaybackState();
-            return (ps != null) ? ps.getPosition() : 0;
-        } catch (Exception e) {
-            return 0;
-        }
+    private void updatePlaybackState(int state, long position) {
+        stateStore.update(s -> s.withPlaybackState(state));
+        playbackStatePublisher.update(state, position);
     }
 
-    private void broadcastUiUpdate(JSONObject state) {
-        Intent intent = new Intent("UPDATE_UI");
-        intent.putExtra("STATE_JSON", state.toString());
-        LocalBroadcastManager.getInstance(this).sendBroadcast(intent);
+    private long getCurrentPositionSafe() {
+        return playbackStatePublisher.getPosition();
     }
 
     private void createNotificationChannel() {
@@ -485,14 +1062,60 @@ public class MusicPlayerService extends MediaBrowserServiceCompat implements Lif
     @Override
     public void onDestroy() {
         super.onDestroy();
+        destroyed = true;
+        endTrackTrace();
+        // No blanket removeCallbacks here: the renderer's release, browse-tree writes and a
+        // session clear are all queued on this handler. quitSafely runs everything already due
+        // and drops only future delayed work, which flushNow below makes redundant.
+        notificationRenderer.release();
+        playbackHandler.post(sessionStore::flushNow);
+        playbackThread.quitSafely();
+        if (BuildConfig.DEBUG) {
+            looperMonitor.uninstall(Looper.getMainLooper());
+            Log.d(TAG, "Main-thread command cost: " + looperMonitor);
+        }
         if (sleepTimer != null) sleepTimer.cancel();
+        LocalBroadcastManager.getInstance(this).unregisterReceiver(uiVisibilityReceiver);
+        mainHandler.removeCallbacks(quarantineReport);
+        mainHandler.removeCallbacks(retryCurrentTrack);
+        networkPolicy.stop();
+        uiChannel.release();
         lifecycleRegistry.handleLifecycleEvent(Lifecycle.Event.ON_STOP);
         lifecycleRegistry.handleLifecycleEvent(Lifecycle.Event.ON_DESTROY);
         if (mediaSession != null) {
             mediaSession.setActive(false);
             mediaSession.release();
         }
-        executorService.shutdown();
+        artworkFetcher.shutdown();
+        prefetchScheduler.shutdown();
+        resourceManager.unregisterAll();
+    }
+
+    // adb shell dumpsys activity service com.streamtune.app/.MusicPlayerService
+    @Override
+    protected void dump(FileDescriptor fd, PrintWriter writer, String[] args) {
+        // dumpsys ... MusicPlayerService trace on|off
+        if (args != null && args.length == 2 && "trace".equals(args[0])) {
+            PlaybackTrace.setEnabled("on".equals(args[1]));
+            writer.println("Tracing: " + (PlaybackTrace.isEnabled() ? "on" : "off"));
+            return;
+        }
+        metrics.dump(writer);
+        writer.println("PlaybackState: published=" + playbackStatePublisher.getPublishedCount()
+                + " suppressed=" + playbackStatePublisher.getSuppressedCount());
+        writer.println("Notification: rendered=" + notificationRenderer.getRenderedCount()
+                + " skipped=" + notificationRenderer.getSkippedCount());
+        writer.println("UiChannel: flushes=" + uiChannel.getFlushCount() + " merged=" + uiChannel.getMergedCount());
+        writer.println("MainThread: " + looperMonitor);
+        writer.println("Queue: size=" + playlist.size() + " index=" + currentIndex);
+        PlayerState state = stateStore.get();
+        writer.println("State: generation=" + state.generation + " trackGeneration=" + state.trackGeneration
+                + " queue=" + state.queue.size() + " index=" + state.index);
+        writer.println("BrowseTree: cachedParents=" + browseTree.cachedParentCount());
+        writer.println("Network: " + networkPolicy);
+        writer.println("Quarantine: size=" + quarantine.size() + " errorStreak=" + errorStreakCount);
+        resourceManager.dump(writer);
+        writer.println("Tracing: " + (PlaybackTrace.isEnabled() ? "on" : "off"));
     }
 
     @NonNull
@@ -506,11 +1129,25 @@ public class MusicPlayerService extends MediaBrowserServiceCompat implements Lif
 
     @Nullable @Override
     public BrowserRoot onGetRoot(@NonNull String c, int i, @Nullable Bundle b) {
-        return new BrowserRoot("media_root", null);
+        return new BrowserRoot(BrowseTree.ROOT_ID, null);
     }
 
     @Override
     public void onLoadChildren(@NonNull String p, @NonNull Result<List<MediaBrowserCompat.MediaItem>> r) {
-        r.sendResult(null);
+        onLoadChildren(p, r, Bundle.EMPTY);
+    }
+
+    // Overriding the options variant means paging is ours; the compat layer won't slice the list again
+    @Override
+    public void onLoadChildren(@NonNull String parentId, @NonNull Result<List<MediaBrowserCompat.MediaItem>> result,
+                               @NonNull Bundle options) {
+        List<MediaBrowserCompat.MediaItem> cached = browseTree.getCached(parentId, options);
+        if (cached != null) {
+            result.sendResult(cached);
+            return;
+        }
+        result.detach();
+        List<Song> queueSnapshot = BrowseTree.QUEUE_ID.equals(parentId) ? stateStore.get().queue : null;
+        browseTree.load(parentId, options, queueSnapshot, children -> mainHandler.post(() -> result.sendResult(children)));
     }
 }
@@ -0,0 +1,187 @@
+package com.streamtune.app;
+
+import android.content.Context;
+import android.net.ConnectivityManager;
+import android.net.Network;
+import android.net.NetworkCapabilities;
+import android.os.Build;
+import android.os.SystemClock;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Decides how aggressively the service uses the network: how many songs ahead we
+ * warm, which YouTube thumbnail size we fetch and how early we ask the web app for
+ * more songs. Inputs are the default network's capabilities (metered, link
+ * bandwidth estimate) and the throughput actually observed on our own downloads,
+ * whichever is worse. Thread-safe; the listener runs on a ConnectivityManager thread.
+ */
+public class NetworkPolicy {
+
+    public enum Tier {
+        OFFLINE(0, "default", 2),
+        SLOW(1, "default", 4),
+        METERED(1, "mqdefault", 2),
+        UNMETERED(3, "hqdefault", 3);
+
+        /** Songs ahead of the current one whose artwork is warmed. */
+        public final int lookahead;
+        /** YouTube thumbnail variant: default 120x90, mqdefault 320x180, hqdefault 480x360. */
+        public final String artworkVariant;
+        /** Ask for more songs once this many or fewer remain after the current one. */
+        public final int fetchMoreThreshold;
+
+        Tier(int lookahead, String artworkVariant, int fetchMoreThreshold) {
+            this.lookahead = lookahead;
+            this.artworkVariant = artworkVariant;
+            this.fetchMoreThreshold = fetchMoreThreshold;
+        }
+    }
+
+    public interface Listener {
+        void onTierChanged(Tier tier);
+    }
+
+    private static final long SLOW_KBPS = 500;
+    // Samples are body-only, so even the SLOW tier's 120x90 thumbnails (2-4 KB) count
+    private static final int MIN_SAMPLE_BYTES = 2 * 1024;
+    private static final float EWMA_WEIGHT = 0.3f;
+    // An estimate nobody has confirmed for this long is dropped, so a bad patch can't pin the tier
+    private static final long OBSERVED_TTL_MS = 2 * 60_000;
+
+    private final ConnectivityManager connectivityManager;
+    private final Listener listener;
+    private ConnectivityManager.NetworkCallback callback;
+
+    // Guarded by this
+    private boolean connected = true;
+    private boolean metered;
+    private long linkKbps = -1;
+    private long observedKbps = -1;
+    private long observedAt;
+    private Tier tier = Tier.METERED;
+
+    public NetworkPolicy(Context context, Listener listener) {
+        this.connectivityManager = (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+        this.listener = listener;
+    }
+
+    public void start() {
+        if (connectivityManager == null) return;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+            callback = new ConnectivityManager.NetworkCallback() {
+                @Override
+                public void onCapabilitiesChanged(@NonNull Network network, @NonNull NetworkCapabilities caps) {
+                    synchronized (NetworkPolicy.this) {
+                        boolean nowMetered = !caps.hasCapability(NetworkCapabilities.NET_CAPABILITY_NOT_METERED);
+                        long nowLinkKbps = caps.getLinkDownstreamBandwidthKbps();
+                        // Another link (or a different one on the same network) invalidates what we measured
+                        if (!connected || nowMetered != metered || nowLinkKbps != linkKbps) observedKbps = -1;
+                        connected = true;
+                        metered = nowMetered;
+                        linkKbps = nowLinkKbps;
+                    }
+                    recompute();
+                }
+
+                @Override
+                public void onLost(@NonNull Network network) {
+                    synchronized (NetworkPolicy.this) {
+                        connected = false;
+                        // A new network starts from a clean slate rather than the old link's speed
+                        observedKbps = -1;
+                    }
+                    recompute();
+                }
+            };
+            connectivityManager.registerDefaultNetworkCallback(callback);
+        } else {
+            // No callbacks for the default network here; classify once and rely on observed throughput
+            synchronized (this) {
+                metered = connectivityManager.isActiveNetworkMetered();
+            }
+            recompute();
+        }
+    }
+
+    public void stop() {
+        if (callback != null && connectivityManager != null) {
+            connectivityManager.unregisterNetworkCallback(callback);
+            callback = null;
+        }
+    }
+
+    /** Feeds a completed download (body bytes and the time spent reading them) into the throughput estimate. */
+    public void recordDownload(long bytes, long nanos) {
+        if (bytes >= MIN_SAMPLE_BYTES && nanos > 0) {
+            long kbps = bytes * 8L * 1_000_000L / nanos;
+            synchronized (this) {
+                observedKbps = observedKbps < 0 || isObservedExpired() ? kbps
+                        : (long) (observedKbps + EWMA_WEIGHT * (kbps - observedKbps));
+                observedAt = SystemClock.elapsedRealtime();
+            }
+        }
+        // Even a sample too small to count lets an expired estimate go
+        recompute();
+    }
+
+    public synchronized Tier getTier() {
+        return tier;
+    }
+
+    /** Swaps the size variant of a YouTube thumbnail URL; other URLs are returned unchanged. */
+    public String artworkUrl(String thumbnailUrl) {
+        return withVariant(thumbnailUrl, getTier().artworkVariant);
+    }
+
+    /** Every size variant of a thumbnail URL, largest first; just the URL itself if it has none. */
+    public static List<String> artworkVariants(String thumbnailUrl) {
+        List<String> urls = new ArrayList<>();
+        Tier[] tiers = Tier.values();
+        for (int i = tiers.length - 1; i >= 0; i--) {
+            String url = withVariant(thumbnailUrl, tiers[i].artworkVariant);
+            if (!urls.contains(url)) urls.add(url);
+        }
+        return urls;
+    }
+
+    private static String withVariant(String thumbnailUrl, String variant) {
+        int slash = thumbnailUrl.lastIndexOf('/');
+        if (!thumbnailUrl.contains("img.youtube.com/vi/") || slash < 0
+                || !thumbnailUrl.endsWith("default.jpg")) {
+            return thumbnailUrl;
+        }
+        return thumbnailUrl.substring(0, slash + 1) + variant + ".jpg";
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "tier=" + tier + " metered=" + metered + " linkKbps=" + linkKbps + " observedKbps=" + observedKbps;
+    }
+
+    private void recompute() {
+        Tier next;
+        synchronized (this) {
+            next = classify();
+            if (next == tier) return;
+            tier = next;
+        }
+        listener.onTierChanged(next);
+    }
+
+    private boolean isObservedExpired() {
+        return SystemClock.elapsedRealtime() - observedAt > OBSERVED_TTL_MS;
+    }
+
+    private Tier classify() {
+        if (!connected) return Tier.OFFLINE;
+        long kbps = linkKbps;
+        if (observedKbps >= 0 && isObservedExpired()) observedKbps = -1;
+        if (observedKbps >= 0 && (kbps <= 0 || observedKbps < kbps)) kbps = observedKbps;
+        if (kbps > 0 && kbps < SLOW_KBPS) return Tier.SLOW;
+        return metered ? Tier.METERED : Tier.UNMETERED;
+    }
+}
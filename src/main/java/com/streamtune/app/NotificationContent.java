@@ -0,0 +1,34 @@
+package com.streamtune.app;
+
+import android.graphics.Bitmap;
+
+import androidx.annotation.Nullable;
+
+import java.util.Objects;
+
+/**
+ * What the media notification visibly shows. NotificationRenderer posts a new
+ * notification only when this differs from the last one posted. The artwork is
+ * compared by identity and never touched, so the diff runs on the JVM with null
+ * or stand-in artwork.
+ */
+public final class NotificationContent {
+
+    public final String title;
+    public final String artist;
+    @Nullable public final Bitmap artwork;
+    public final boolean playing;
+
+    public NotificationContent(String title, String artist, @Nullable Bitmap artwork, boolean playing) {
+        this.title = title;
+        this.artist = artist;
+        this.artwork = artwork;
+        this.playing = playing;
+    }
+
+    /** Whether posting this over previous would change nothing on screen. */
+    public boolean sameAs(@Nullable NotificationContent previous) {
+        return previous != null && playing == previous.playing && artwork == previous.artwork
+                && Objects.equals(title, previous.title) && Objects.equals(artist, previous.artist);
+    }
+}
@@ -0,0 +1,201 @@
+package com.streamtune.app;
+
+import android.app.Notification;
+import android.app.NotificationManager;
+import android.app.PendingIntent;
+import android.app.Service;
+import android.content.Context;
+import android.content.Intent;
+import android.graphics.Bitmap;
+import android.os.Build;
+import android.os.Handler;
+import android.support.v4.media.MediaMetadataCompat;
+import android.support.v4.media.session.MediaSessionCompat;
+import android.support.v4.media.session.PlaybackStateCompat;
+
+import androidx.annotation.Nullable;
+import androidx.core.app.NotificationCompat;
+import androidx.media.session.MediaButtonReceiver;
+
+/**
+ * Owns the media notification. Actions, PendingIntents and the builder are created
+ * once; each render compares what is actually visible (a NotificationContent)
+ * with the last posted notification and skips nm.notify when nothing changed. Plain updates are collapsed over a short window, foreground
+ * transitions go out immediately. All work runs on the given handler's thread.
+ */
+public class NotificationRenderer {
+
+    /** Where the renderer reads the current state from; called on the handler thread. */
+    public interface ContentSource {
+        /** One snapshot per render, so title, artwork and play state always belong together. */
+        PlayerState getState();
+    }
+
+    private static final long COLLAPSE_WINDOW_MS = 100;
+
+    private final Service service;
+    private final Handler handler;
+    private final ContentSource source;
+    private final int notificationId;
+    private final NotificationManager notificationManager;
+    private final NotificationCompat.Builder builder;
+    private final NotificationCompat.Action prevAction;
+    private final NotificationCompat.Action playAction;
+    private final NotificationCompat.Action pauseAction;
+    private final NotificationCompat.Action nextAction;
+    private final Runnable renderRunnable = this::render;
+
+    private boolean updateScheduled;
+    private boolean foreground;
+    private boolean released;
+
+    // What the last posted notification showed
+    @Nullable private NotificationContent posted;
+
+    private long renderedCount;
+    private long skippedCount;
+
+    public NotificationRenderer(Service service, Handler handler, MediaSessionCompat.Token sessionToken,
+                                String channelId, int notificationId, ContentSource source) {
+        this.service = service;
+        this.handler = handler;
+        this.source = source;
+        this.notificationId = notificationId;
+        this.notificationManager = (NotificationManager) service.getSystemService(Context.NOTIFICATION_SERVICE);
+
+        prevAction = new NotificationCompat.Action(
+                R.drawable.ic_previous, "Previous",
+                MediaButtonReceiver.buildMediaButtonPendingIntent(service, PlaybackStateCompat.ACTION_SKIP_TO_PREVIOUS));
+        pauseAction = new NotificationCompat.Action(
+                R.drawable.ic_pause, "Pause",
+                MediaButtonReceiver.buildMediaButtonPendingIntent(service, PlaybackStateCompat.ACTION_PAUSE));
+        playAction = new NotificationCompat.Action(
+                R.drawable.ic_play, "Play",
+                MediaButtonReceiver.buildMediaButtonPendingIntent(service, PlaybackStateCompat.ACTION_PLAY));
+        nextAction = new NotificationCompat.Action(
+                R.drawable.ic_next, "Next",
+                MediaButtonReceiver.buildMediaButtonPendingIntent(service, PlaybackStateCompat.ACTION_SKIP_TO_NEXT));
+
+        // Open app when tapping notification
+        PendingIntent contentIntent = PendingIntent.getActivity(
+                service, 0,
+                new Intent(service, MainActivity.class),
+                (Build.VERSION.SDK_INT >= 26)
+                        ? PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE
+                        : PendingIntent.FLAG_UPDATE_CURRENT
+        );
+
+        builder = new NotificationCompat.Builder(service, channelId)
+                .setSmallIcon(R.drawable.ic_music_note)
+                .setContentIntent(contentIntent)
+                .setDeleteIntent(MediaButtonReceiver.buildMediaButtonPendingIntent(service, PlaybackStateCompat.ACTION_STOP))
+                .setVisibility(NotificationCompat.VISIBILITY_PUBLIC)
+                .setCategory(NotificationCompat.CATEGORY_TRANSPORT)
+                // High priority helps old Android show media-style actions reliably
+                .setPriority(NotificationCompat.PRIORITY_HIGH)
+                .setOnlyAlertOnce(true)
+                .setStyle(new androidx.media.app.NotificationCompat.MediaStyle()
+                        .setMediaSession(sessionToken)
+                        .setShowActionsInCompactView(0, 1, 2));
+    }
+
+    /** Schedules a render; calls within the collapse window share one. */
+    public void requestUpdate() {
+        handler.post(() -> {
+            if (released || updateScheduled) return;
+            updateScheduled = true;
+            handler.postDelayed(renderRunnable, COLLAPSE_WINDOW_MS);
+        });
+    }
+
+    /** Promotes the service to foreground once; later calls behave like an immediate render. */
+    public void startForeground() {
+        handler.post(() -> {
+            if (released) return;
+            if (foreground) {
+                render();
+                return;
+            }
+            cancelScheduled();
+            service.startForeground(notificationId, build(contentOf(source.getState())));
+            foreground = true;
+            renderedCount++;
+        });
+    }
+
+    /** Leaves foreground but keeps the notification, updated to the paused state. */
+    public void stopForeground() {
+        handler.post(() -> {
+            if (released) return;
+            if (foreground) {
+                service.stopForeground(false);
+                foreground = false;
+            }
+            render();
+        });
+    }
+
+    public void release() {
+        handler.post(() -> {
+            released = true;
+            cancelScheduled();
+        });
+    }
+
+    public long getRenderedCount() {
+        return renderedCount;
+    }
+
+    public long getSkippedCount() {
+        return skippedCount;
+    }
+
+    private void cancelScheduled() {
+        handler.removeCallbacks(renderRunnable);
+        updateScheduled = false;
+    }
+
+    private void render() {
+        cancelScheduled();
+        if (released || notificationManager == null) return;
+        NotificationContent content = contentOf(source.getState());
+        if (content.sameAs(posted)) {
+            skippedCount++;
+            return;
+        }
+        notificationManager.notify(notificationId, build(content));
+        renderedCount++;
+    }
+
+    private Notification build(NotificationContent content) {
+        posted = content;
+        builder.clearActions();
+        return builder
+                .setContentTitle(content.title)
+                .setContentText(content.artist)
+                .setLargeIcon(content.artwork)
+                .setOngoing(content.playing)
+                .addAction(prevAction)
+                .addAction(content.playing ? pauseAction : playAction)
+                .addAction(nextAction)
+                .build();
+    }
+
+    private static NotificationContent contentOf(PlayerState state) {
+        MediaMetadataCompat metadata = state.metadata;
+        return new NotificationContent(title(metadata), artist(metadata), artwork(metadata), state.isPlaying());
+    }
+
+    private static String title(@Nullable MediaMetadataCompat metadata) {
+        return metadata != null ? metadata.getString(MediaMetadataCompat.METADATA_KEY_TITLE) : "StreamTune";
+    }
+
+    private static String artist(@Nullable MediaMetadataCompat metadata) {
+        return metadata != null ? metadata.getString(MediaMetadataCompat.METADATA_KEY_ARTIST) : "Loading...";
+    }
+
+    @Nullable
+    private static Bitmap artwork(@Nullable MediaMetadataCompat metadata) {
+        return metadata != null ? metadata.getBitmap(MediaMetadataCompat.METADATA_KEY_ALBUM_ART) : null;
+    }
+}
@@ -0,0 +1,158 @@
+package com.streamtune.app;
+
+import android.os.SystemClock;
+
+import java.io.PrintWriter;
+
+/**
+ * Process-wide playback latency and stall metrics. Everything is recorded into
+ * fixed-bucket histograms backed by preallocated long arrays, so recording an event
+ * never allocates. The snapshot is a compact JSON string for the JS bridge and
+ * a plain-text dump for dumpsys.
+ */
+public final class PlaybackMetrics {
+
+    /** Upper bounds in ms; the last bucket is open-ended. */
+    private static final long[] BOUNDS_MS = {50, 100, 200, 400, 800, 1600, 3200, 6400, 12800, Long.MAX_VALUE};
+
+    private static final PlaybackMetrics INSTANCE = new PlaybackMetrics();
+
+    public static PlaybackMetrics get() {
+        return INSTANCE;
+    }
+
+    /** startPlayback bridge call to the first PLAYING state. */
+    private final Histogram startToPlay = new Histogram("startToPlay");
+    /** Any track change (skip, auto-advance, gapless swap) to PLAYING. */
+    private final Histogram skipToPlay = new Histogram("skipToPlay");
+    /** BUFFERING after playback had started, until PLAYING again. */
+    private final Histogram stall = new Histogram("stall");
+
+    private long pendingStartAt;
+    private long pendingSkipAt;
+    private long stallStartedAt;
+    private boolean playing;
+    private long errorCount;
+
+    private PlaybackMetrics() {}
+
+    /** Called when a startPlayback request reaches the service; requestedAt is uptimeMillis at the bridge. */
+    public synchronized void markStartRequested(long requestedAt) {
+        pendingStartAt = requestedAt;
+        pendingSkipAt = 0;
+    }
+
+    /** Called whenever a new track is handed to a player. */
+    public synchronized void markTrackLoad() {
+        stallStartedAt = 0;
+        playing = false;
+        // The first load after startPlayback is measured as start latency, not a skip
+        if (pendingStartAt == 0) pendingSkipAt = SystemClock.uptimeMillis();
+    }
+
+    public synchronized void onPlaying() {
+        long now = SystemClock.uptimeMillis();
+        if (pendingStartAt != 0) {
+            startToPlay.record(now - pendingStartAt);
+            pendingStartAt = 0;
+        } else if (pendingSkipAt != 0) {
+            skipToPlay.record(now - pendingSkipAt);
+            pendingSkipAt = 0;
+        } else if (stallStartedAt != 0) {
+            stall.record(now - stallStartedAt);
+        }
+        stallStartedAt = 0;
+        playing = true;
+    }
+
+    public synchronized void onBuffering() {
+        if (playing && stallStartedAt == 0) stallStartedAt = SystemClock.uptimeMillis();
+        playing = false;
+    }
+
+    public synchronized void onStopped() {
+        playing = false;
+        stallStartedAt = 0;
+    }
+
+    public synchronized void onError() {
+        errorCount++;
+    }
+
+    public synchronized String toJson() {
+        StringBuilder sb = new StringBuilder(256);
+        sb.append("{\"bucketBoundsMs\":[");
+        for (int i = 0; i < BOUNDS_MS.length - 1; i++) {
+            if (i > 0) sb.append(',');
+            sb.append(BOUNDS_MS[i]);
+        }
+        sb.append("],");
+        startToPlay.appendJson(sb).append(',');
+        skipToPlay.appendJson(sb).append(',');
+        stall.appendJson(sb).append(',');
+        sb.append("\"errors\":").append(errorCount);
+        return sb.append('}').toString();
+    }
+
+    public synchronized void dump(PrintWriter writer) {
+        writer.println("PlaybackMetrics:");
+        startToPlay.dump(writer);
+        skipToPlay.dump(writer);
+        stall.dump(writer);
+        writer.println("  errors=" + errorCount);
+    }
+
+    private static final class Histogram {
+        final String name;
+        final long[] counts = new long[BOUNDS_MS.length];
+        long total;
+        long sumMs;
+
+        Histogram(String name) {
+            this.name = name;
+        }
+
+        void record(long ms) {
+            if (ms < 0) return;
+            int i = 0;
+            while (ms > BOUNDS_MS[i]) i++;
+            counts[i]++;
+            total++;
+            sumMs += ms;
+        }
+
+        /** Upper bound of the bucket holding the percentile (lower bound for the open bucket), -1 without data. */
+        long percentile(int pct) {
+            if (total == 0) return -1;
+            long rank = (total * pct + 99) / 100;
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) return BOUNDS_MS[i] == Long.MAX_VALUE ? BOUNDS_MS[i - 1] : BOUNDS_MS[i];
+            }
+            return BOUNDS_MS[BOUNDS_MS.length - 2];
+        }
+
+        StringBuilder appendJson(StringBuilder sb) {
+            sb.append('"').append(name).append("\":{\"count\":").append(total)
+                    .append(",\"sumMs\":").append(sumMs)
+                    .append(",\"p50\":").append(percentile(50))
+                    .append(",\"p99\":").append(percentile(99))
+                    .append(",\"buckets\":[");
+            for (int i = 0; i < counts.length; i++) {
+                if (i > 0) sb.append(',');
+                sb.append(counts[i]);
+            }
+            return sb.append("]}");
+        }
+
+        void dump(PrintWriter writer) {
+            writer.print("  " + name + ": count=" + total + " p50<=" + percentile(50) + "ms p99<=" + percentile(99) + "ms buckets=");
+            for (int i = 0; i < counts.length; i++) {
+                writer.print(i == counts.length - 1 ? ">" + BOUNDS_MS[i - 1] : "<=" + BOUNDS_MS[i]);
+                writer.print(":" + counts[i] + " ");
+            }
+            writer.println();
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package com.streamtune.app;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import androidx.annotation.Nullable;
+
+import com.pierfrancescosoffritti.androidyoutubeplayer.core.player.PlayerConstants;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Video IDs the player refused for good (removed, or embedding disabled), so a
+ * queue skips them up front instead of spending seconds on a load that is known to
+ * fail. Transient player errors never land here; the service retries those.
+ * Entries still expire, since owners do re-enable embedding. Stored as
+ * videoId -> expiry (wall clock) in its own preferences file.
+ */
+public class PlaybackQuarantine {
+
+    private static final String PREFS_NAME = "playback_quarantine";
+    private static final long TTL_MS = 7L * 24 * 60 * 60 * 1000;
+    private static final int MAX_ENTRIES = 500;
+
+    private final Context context;
+
+    // Guarded by this
+    @Nullable private SharedPreferences prefs; // null until load(); entries added before then are written by it
+    private final Map<String, Long> entries = new HashMap<>();
+    private final List<String> unreported = new ArrayList<>();
+
+    public PlaybackQuarantine(Context context) {
+        this.context = context.getApplicationContext();
+    }
+
+    /** Opens the preferences file, reads the stored entries and drops expired ones. Blocks on disk, so call it off main. */
+    public void load() {
+        SharedPreferences loaded = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        Map<String, ?> stored = loaded.getAll();
+        long now = System.currentTimeMillis();
+        SharedPreferences.Editor editor = loaded.edit();
+        synchronized (this) {
+            for (Map.Entry<String, ?> entry : stored.entrySet()) {
+                Object expiry = entry.getValue();
+                if (expiry instanceof Long && (Long) expiry > now) {
+                    // Entries added before the load finished are newer; keep those
+                    if (!entries.containsKey(entry.getKey())) entries.put(entry.getKey(), (Long) expiry);
+                } else {
+                    editor.remove(entry.getKey());
+                }
+            }
+            // The cap holds across restarts too, whatever an older build left behind
+            trimToMax(editor);
+            for (Map.Entry<String, Long> entry : entries.entrySet()) {
+                if (!entry.getValue().equals(stored.get(entry.getKey()))) editor.putLong(entry.getKey(), entry.getValue());
+            }
+            prefs = loaded;
+        }
+        editor.apply();
+    }
+
+    public synchronized boolean isQuarantined(String videoId) {
+        Long expiry = entries.get(videoId);
+        if (expiry == null) return false;
+        if (expiry > System.currentTimeMillis()) return true;
+        entries.remove(videoId);
+        if (prefs != null) prefs.edit().remove(videoId).apply();
+        return false;
+    }
+
+    /** Quarantines videoId if error means it can never play here; returns whether it did. */
+    public synchronized boolean add(String videoId, PlayerConstants.PlayerError error) {
+        if (videoId == null || videoId.isEmpty() || !isPermanent(error)) return false;
+        long expiry = System.currentTimeMillis() + TTL_MS;
+        SharedPreferences.Editor editor = prefs != null ? prefs.edit().putLong(videoId, expiry) : null;
+        if (entries.put(videoId, expiry) == null) trimToMax(editor);
+        if (editor != null) editor.apply();
+        if (!unreported.contains(videoId)) unreported.add(videoId);
+        return true;
+    }
+
+    // Guarded by this. Evicts the entries closest to expiry until MAX_ENTRIES remain
+    private void trimToMax(@Nullable SharedPreferences.Editor editor) {
+        int excess = entries.size() - MAX_ENTRIES;
+        if (excess <= 0) return;
+        List<Map.Entry<String, Long>> byExpiry = new ArrayList<>(entries.entrySet());
+        Collections.sort(byExpiry, (a, b) -> Long.compare(a.getValue(), b.getValue()));
+        for (int i = 0; i < excess; i++) {
+            String videoId = byExpiry.get(i).getKey();
+            entries.remove(videoId);
+            if (editor != null) editor.remove(videoId);
+        }
+    }
+
+    /** IDs quarantined since the last call, for reporting to the web app in one batch. */
+    public synchronized List<String> drainUnreported() {
+        List<String> batch = new ArrayList<>(unreported);
+        unreported.clear();
+        return batch;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    // HTML5 and UNKNOWN errors are what a dropped connection looks like; they say nothing about the video
+    static boolean isPermanent(PlayerConstants.PlayerError error) {
+        return error == PlayerConstants.PlayerError.VIDEO_NOT_FOUND
+                || error == PlayerConstants.PlayerError.VIDEO_NOT_PLAYABLE_IN_EMBEDDED_PLAYER;
+    }
+}
@@ -0,0 +1,98 @@
+package com.streamtune.app;
+
+import android.os.SystemClock;
+import android.support.v4.media.session.MediaSessionCompat;
+import android.support.v4.media.session.PlaybackStateCompat;
+
+/**
+ * Publishes playback state to the MediaSession only when something a controller
+ * can't extrapolate has changed. MediaSession clients derive the live position from
+ * position + speed * elapsed, so a tick that lands where extrapolation predicts is
+ * suppressed. Keeps the last published values locally so callers never need a
+ * controller round trip to read the current state.
+ */
+public class PlaybackStatePublisher {
+
+    static final long ACTIONS =
+            PlaybackStateCompat.ACTION_PLAY |
+                    PlaybackStateCompat.ACTION_PAUSE |
+                    PlaybackStateCompat.ACTION_PLAY_PAUSE |   // toggles on old Android
+                    PlaybackStateCompat.ACTION_STOP |
+                    PlaybackStateCompat.ACTION_SKIP_TO_NEXT |
+                    PlaybackStateCompat.ACTION_SKIP_TO_PREVIOUS |
+                    PlaybackStateCompat.ACTION_SEEK_TO |
+                    PlaybackStateCompat.ACTION_PLAY_FROM_MEDIA_ID;
+
+    /** How far a reported position may drift from the extrapolated one before we republish. */
+    static final long DRIFT_TOLERANCE_MS = 1500;
+
+    private final MediaSessionCompat mediaSession;
+    private final PlaybackStateCompat.Builder builder = new PlaybackStateCompat.Builder().setActions(ACTIONS);
+
+    private int state = PlaybackStateCompat.STATE_NONE;
+    private long position;
+    private float speed;
+    private long updateTime;
+    private boolean hasPublished;
+
+    private long publishedCount;
+    private long suppressedCount;
+
+    public PlaybackStatePublisher(MediaSessionCompat mediaSession) {
+        this.mediaSession = mediaSession;
+    }
+
+    /** Publishes unconditionally on a state change, otherwise only if the position jumped. */
+    public synchronized void update(int newState, long newPosition) {
+        long now = SystemClock.elapsedRealtime();
+        float newSpeed = (newState == PlaybackStateCompat.STATE_PLAYING) ? 1.0f : 0f;
+        if (hasPublished && newState == state
+                && !isJump(position, speed, updateTime, newPosition, now)) {
+            suppressedCount++;
+            return;
+        }
+        publish(newState, newPosition, newSpeed, now);
+    }
+
+    /**
+     * An explicit seek always goes out: a short seek can land inside the drift
+     * tolerance, and controllers would keep showing the old position.
+     */
+    public synchronized void seekTo(long newPosition) {
+        publish(state, newPosition, speed, SystemClock.elapsedRealtime());
+    }
+
+    private void publish(int newState, long newPosition, float newSpeed, long now) {
+        state = newState;
+        position = newPosition;
+        speed = newSpeed;
+        updateTime = now;
+        hasPublished = true;
+        publishedCount++;
+        mediaSession.setPlaybackState(builder.setState(newState, newPosition, newSpeed, now).build());
+    }
+
+    public synchronized int getState() {
+        return state;
+    }
+
+    /** Current position extrapolated the same way a MediaController would. */
+    public synchronized long getPosition() {
+        if (speed == 0f) return position;
+        return position + (long) ((SystemClock.elapsedRealtime() - updateTime) * speed);
+    }
+
+    public synchronized long getPublishedCount() {
+        return publishedCount;
+    }
+
+    public synchronized long getSuppressedCount() {
+        return suppressedCount;
+    }
+
+    /** Pure so the suppression decision can be exercised without a MediaSession. */
+    static boolean isJump(long position, float speed, long updateTime, long newPosition, long now) {
+        long expected = (speed == 0f) ? position : position + (long) ((now - updateTime) * speed);
+        return Math.abs(newPosition - expected) > DRIFT_TOLERANCE_MS;
+    }
+}
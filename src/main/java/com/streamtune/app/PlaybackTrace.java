@@ -0,0 +1,80 @@
+package com.streamtune.app;
+
+import androidx.core.os.TraceCompat;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Perfetto instrumentation for the playback and bridge hot paths, off by default.
+ * Switch it on at runtime with
+ * {@code adb shell dumpsys activity service com.streamtune.app/.MusicPlayerService trace on}
+ * and record with the app's atrace category. While off, every call here is one
+ * volatile read: callers pass constant names, and cookies are only handed out
+ * while on (0 means "not traced" and makes the async calls no-ops).
+ */
+public final class PlaybackTrace {
+
+    /** Async: one track, from the request (bridge call, skip, auto-advance) until it is audible. */
+    public static final String TRACK_LOAD = "trackLoad";
+    /** Async: startPlayback on the JS thread until the service handles it on main. */
+    public static final String BRIDGE_DISPATCH = "bridgeDispatch";
+    /** Async: the player being told what to play until its first PLAYING state. */
+    public static final String PLAYER_START = "playerStart";
+
+    public static final String COUNTER_QUEUE_SIZE = "queueSize";
+    /** Bridge commands the service has received but not yet handled. */
+    public static final String COUNTER_BRIDGE_COMMANDS = "bridgeCommandsPending";
+    /** Deltas waiting in the UI channel for the next flush to the page. */
+    public static final String COUNTER_UI_UPDATES = "uiUpdatesPending";
+
+    /** Intent extra carrying a TRACK_LOAD cookie from the bridge to the service. */
+    public static final String EXTRA_COOKIE = "TRACE_COOKIE";
+
+    private static volatile boolean enabled;
+    private static final AtomicInteger nextCookie = new AtomicInteger();
+
+    private PlaybackTrace() {}
+
+    public static void setEnabled(boolean on) {
+        enabled = on;
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /** Returns whether a section was opened; pass that to end() so a toggle in between can't unbalance it. */
+    public static boolean begin(String name) {
+        if (!enabled) return false;
+        TraceCompat.beginSection(name);
+        return true;
+    }
+
+    public static void end(boolean begun) {
+        if (begun) TraceCompat.endSection();
+    }
+
+    /** Opens an async slice and returns its cookie, or 0 while tracing is off. */
+    public static int beginAsync(String name) {
+        if (!enabled) return 0;
+        int cookie;
+        do {
+            cookie = nextCookie.incrementAndGet();
+        } while (cookie == 0);
+        TraceCompat.beginAsyncSection(name, cookie);
+        return cookie;
+    }
+
+    /** A further slice under a cookie from beginAsync(String), so stages of one load line up. */
+    public static void beginAsync(String name, int cookie) {
+        if (cookie != 0) TraceCompat.beginAsyncSection(name, cookie);
+    }
+
+    public static void endAsync(String name, int cookie) {
+        if (cookie != 0) TraceCompat.endAsyncSection(name, cookie);
+    }
+
+    public static void counter(String name, int value) {
+        if (enabled) TraceCompat.setCounter(name, value);
+    }
+}
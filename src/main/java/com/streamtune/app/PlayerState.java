@@ -0,0 +1,71 @@
+package com.streamtune.app;
+
+import android.support.v4.media.MediaMetadataCompat;
+import android.support.v4.media.session.PlaybackStateCompat;
+
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * One immutable snapshot of the player: queue, current index, metadata and
+ * transport state. Every with* call returns a new snapshot with the next
+ * generation; trackGeneration only moves when a different track becomes current,
+ * which is what late results (artwork, durations) are checked against.
+ * Published through {@link PlayerStateStore}.
+ */
+public final class PlayerState {
+
+    public static final PlayerState EMPTY = new PlayerState(
+            0, 0, Collections.<Song>emptyList(), -1, null, PlaybackStateCompat.STATE_NONE);
+
+    public final long generation;
+    public final long trackGeneration;
+    /** Unmodifiable; safe to hand to any thread without copying. */
+    public final List<Song> queue;
+    public final int index;
+    @Nullable public final MediaMetadataCompat metadata;
+    public final int playbackState;
+
+    private PlayerState(long generation, long trackGeneration, List<Song> queue, int index,
+                        @Nullable MediaMetadataCompat metadata, int playbackState) {
+        this.generation = generation;
+        this.trackGeneration = trackGeneration;
+        this.queue = queue;
+        this.index = index;
+        this.metadata = metadata;
+        this.playbackState = playbackState;
+    }
+
+    /** Takes a copy of queue; the caller's list may keep changing. */
+    public PlayerState withQueue(List<Song> queue, int index) {
+        return new PlayerState(generation + 1, trackGeneration,
+                Collections.unmodifiableList(new ArrayList<>(queue)), index, metadata, playbackState);
+    }
+
+    /** A different track is now current; earlier trackGeneration values go stale. */
+    public PlayerState withTrack(int index, MediaMetadataCompat metadata) {
+        return new PlayerState(generation + 1, trackGeneration + 1, queue, index, metadata, playbackState);
+    }
+
+    public PlayerState withMetadata(MediaMetadataCompat metadata) {
+        return new PlayerState(generation + 1, trackGeneration, queue, index, metadata, playbackState);
+    }
+
+    public PlayerState withPlaybackState(int playbackState) {
+        if (playbackState == this.playbackState) return this;
+        return new PlayerState(generation + 1, trackGeneration, queue, index, metadata, playbackState);
+    }
+
+    @Nullable
+    public Song currentSong() {
+        return index >= 0 && index < queue.size() ? queue.get(index) : null;
+    }
+
+    public boolean isPlaying() {
+        return playbackState == PlaybackStateCompat.STATE_PLAYING
+                || playbackState == PlaybackStateCompat.STATE_BUFFERING;
+    }
+}
@@ -0,0 +1,32 @@
+package com.streamtune.app;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Holds the current {@link PlayerState}. Readers on any thread call get() and work
+ * from that one snapshot without locking; writers apply a mutation with
+ * compare-and-set, retrying on contention, so concurrent updates (a duration on
+ * main, artwork on a fetch thread) compose instead of overwriting each other.
+ */
+public class PlayerStateStore {
+
+    /** Must be side-effect free: it may run more than once under contention. */
+    public interface Mutation {
+        PlayerState apply(PlayerState current);
+    }
+
+    private final AtomicReference<PlayerState> state = new AtomicReference<>(PlayerState.EMPTY);
+
+    public PlayerState get() {
+        return state.get();
+    }
+
+    /** Applies mutation atomically and returns the resulting snapshot (the same one if nothing changed). */
+    public PlayerState update(Mutation mutation) {
+        while (true) {
+            PlayerState current = state.get();
+            PlayerState next = mutation.apply(current);
+            if (next == current || state.compareAndSet(current, next)) return next;
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package com.streamtune.app;
+
+import android.content.Context;
+import android.content.Intent;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Moves large playlist payloads from the JS bridge to MusicPlayerService without
+ * putting them in an Intent. The bridge encodes the JSON once, straight into an
+ * app-private memory-mapped file; only the version number crosses Binder, and the
+ * service maps the same file and streams it into PlaylistParser.
+ *
+ * Each payload gets its own file so an append can never overwrite a playlist the
+ * service hasn't read yet. The reader unlinks the file as soon as it is mapped.
+ */
+public final class PlaylistHandoff {
+
+    private static final String TAG = "PlaylistHandoff";
+    private static final String DIR_NAME = "handoff";
+    private static final int MAGIC = 0x53545048; // "STPH"
+    private static final int HEADER_BYTES = 4 + 8 + 4;
+    // Only files an earlier process (or a read that never happened) left behind get this old
+    private static final long STALE_AFTER_MS = 60 * 60_000;
+
+    public static final String EXTRA_HANDOFF_VERSION = "HANDOFF_VERSION";
+
+    /** Below this size an Intent extra is cheaper than creating and mapping a file. */
+    public static final int INLINE_LIMIT_CHARS = 32 * 1024;
+
+    private static final AtomicLong nextVersion = new AtomicLong(System.currentTimeMillis());
+    private static final AtomicBoolean swept = new AtomicBoolean();
+
+    private PlaylistHandoff() {}
+
+    /** Puts the payload on the intent, inline when small and through a mapped file when large. */
+    public static void attach(Context context, Intent intent, String extraName, String json) {
+        if (json != null && json.length() > INLINE_LIMIT_CHARS) {
+            try {
+                intent.putExtra(EXTRA_HANDOFF_VERSION, write(context, json));
+                return;
+            } catch (IOException e) {
+                Log.w(TAG, "Mapped handoff failed, falling back to Intent extra", e);
+            }
+        }
+        intent.putExtra(extraName, json);
+    }
+
+    /** Opens the payload carried by the intent, whichever way it was attached. */
+    @Nullable
+    public static Reader open(Context context, Intent intent, String extraName) {
+        if (intent.hasExtra(EXTRA_HANDOFF_VERSION)) {
+            try {
+                return read(context, intent.getLongExtra(EXTRA_HANDOFF_VERSION, -1));
+            } catch (IOException e) {
+                Log.e(TAG, "Failed to map playlist handoff", e);
+                return null;
+            }
+        }
+        String json = intent.getStringExtra(extraName);
+        return json != null ? new StringReader(json) : null;
+    }
+
+    static long write(Context context, String json) throws IOException {
+        File dir = new File(context.getCacheDir(), DIR_NAME);
+        if (!dir.isDirectory() && !dir.mkdirs()) throw new IOException("Cannot create " + dir);
+        if (swept.compareAndSet(false, true)) deleteStale(dir);
+
+        long version = nextVersion.incrementAndGet();
+        int length = utf8Length(json);
+        File file = new File(dir, Long.toString(version));
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw");
+             FileChannel channel = raf.getChannel()) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES + length);
+            buffer.putInt(MAGIC).putLong(version).putInt(length);
+            // Encode straight into the mapping: no intermediate byte[] copy of the payload
+            CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder();
+            CoderResult result = encoder.encode(CharBuffer.wrap(json), buffer, true);
+            if (result.isError()) result.throwException();
+            encoder.flush(buffer);
+        } catch (IOException | RuntimeException e) {
+            // The caller falls back to the extra, so nobody will ever read this file
+            file.delete();
+            throw e;
+        }
+        return version;
+    }
+
+    static Reader read(Context context, long version) throws IOException {
+        File file = new File(new File(context.getCacheDir(), DIR_NAME), Long.toString(version));
+        MappedByteBuffer buffer;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+             FileChannel channel = raf.getChannel()) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } finally {
+            // The mapping outlives the directory entry
+            file.delete();
+        }
+        if (buffer.remaining() < HEADER_BYTES || buffer.getInt() != MAGIC || buffer.getLong() != version) {
+            throw new IOException("Corrupt playlist handoff " + version);
+        }
+        int length = buffer.getInt();
+        if (length > buffer.remaining()) throw new IOException("Truncated playlist handoff " + version);
+        buffer.limit(buffer.position() + length);
+        return new InputStreamReader(new ByteBufferInputStream(buffer), StandardCharsets.UTF_8);
+    }
+
+    private static void deleteStale(File dir) {
+        File[] files = dir.listFiles();
+        if (files == null) return;
+        long cutoff = System.currentTimeMillis() - STALE_AFTER_MS;
+        for (File f : files) {
+            if (f.lastModified() < cutoff) f.delete();
+        }
+    }
+
+    private static int utf8Length(String s) {
+        int bytes = 0;
+        for (int i = 0, n = s.length(); i < n; i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                bytes += 1;
+            } else if (c < 0x800) {
+                bytes += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < n && Character.isLowSurrogate(s.charAt(i + 1))) {
+                bytes += 4;
+                i++;
+            } else {
+                // A lone surrogate makes the encoder report an error and attach() falls back to the extra
+                bytes += 3;
+            }
+        }
+        return bytes;
+    }
+
+    private static final class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? (buffer.get() & 0xFF) : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (!buffer.hasRemaining()) return -1;
+            int n = Math.min(len, buffer.remaining());
+            buffer.get(b, off, n);
+            return n;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+}
@@ -0,0 +1,211 @@
+package com.streamtune.app;
+
+import android.util.JsonReader;
+import android.util.JsonToken;
+import android.util.Log;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Pull parser for the playlist JSON the web app sends. Fills Song objects straight
+ * from the token stream instead of building an org.json DOM first, skips unknown
+ * fields and shares repeated artist / thumbnail strings. A malformed entry is
+ * reported and kept as an empty placeholder so indices stay aligned with the web
+ * app's queue; it no longer takes the rest of the list down with it.
+ */
+public final class PlaylistParser {
+
+    private static final String TAG = "PlaylistParser";
+
+    public static final class Result {
+        public final List<Song> songs;
+        /** Entries that weren't objects or had no videoId; they are present as empty songs. */
+        public final int malformedCount;
+        /** True if the stream itself broke off; songs holds everything read before that point. */
+        public final boolean truncated;
+
+        Result(List<Song> songs, int malformedCount, boolean truncated) {
+            this.songs = songs;
+            this.malformedCount = malformedCount;
+            this.truncated = truncated;
+        }
+    }
+
+    /** A named playlist from the user's library, as sent by setSavedPlaylists. */
+    public static final class SavedPlaylist {
+        public final String id;
+        public final String name;
+        public final List<Song> songs;
+
+        public SavedPlaylist(String id, String name, List<Song> songs) {
+            this.id = id;
+            this.name = name;
+            this.songs = songs;
+        }
+    }
+
+    private PlaylistParser() {}
+
+    public static Result parse(String json) {
+        if (json == null || json.isEmpty()) return new Result(new ArrayList<>(), 0, false);
+        return parse(new StringReader(json));
+    }
+
+    public static Result parse(Reader source) {
+        List<Song> songs = new ArrayList<>();
+        Map<String, String> pool = new HashMap<>();
+        int malformed = 0;
+        int index = 0;
+        try (JsonReader reader = new JsonReader(source)) {
+            reader.beginArray();
+            while (reader.hasNext()) {
+                Song song;
+                if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+                    reader.skipValue();
+                    song = emptySong();
+                } else {
+                    song = readSong(reader, pool);
+                }
+                if (song.videoId.isEmpty()) {
+                    malformed++;
+                    Log.w(TAG, "Malformed playlist entry at " + index);
+                }
+                songs.add(song);
+                index++;
+            }
+            reader.endArray();
+        } catch (IOException | IllegalStateException | NumberFormatException e) {
+            Log.e(TAG, "Playlist JSON broke off at entry " + index + ", keeping " + songs.size() + " songs", e);
+            return new Result(songs, malformed, true);
+        }
+        return new Result(songs, malformed, false);
+    }
+
+    /**
+     * Parses [{"id", "name", "songs": [...]}, ...]. Unlike the queue, nothing indexes into
+     * these lists from the web side, so malformed songs and playlists without an id are dropped.
+     */
+    public static List<SavedPlaylist> parsePlaylists(Reader source) {
+        List<SavedPlaylist> playlists = new ArrayList<>();
+        Map<String, String> pool = new HashMap<>();
+        try (JsonReader reader = new JsonReader(source)) {
+            reader.beginArray();
+            while (reader.hasNext()) {
+                if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+                    reader.skipValue();
+                    continue;
+                }
+                String id = "";
+                String name = "";
+                List<Song> songs = new ArrayList<>();
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    switch (reader.nextName()) {
+                        case "id":
+                            id = readString(reader);
+                            break;
+                        case "name":
+                            name = readString(reader);
+                            break;
+                        case "songs":
+                            if (reader.peek() == JsonToken.BEGIN_ARRAY) {
+                                songs = readSongs(reader, pool);
+                            } else {
+                                reader.skipValue();
+                            }
+                            break;
+                        default:
+                            reader.skipValue();
+                            break;
+                    }
+                }
+                reader.endObject();
+                if (!id.isEmpty()) playlists.add(new SavedPlaylist(id, name, songs));
+            }
+            reader.endArray();
+        } catch (IOException | IllegalStateException | NumberFormatException e) {
+            Log.e(TAG, "Saved playlists JSON broke off, keeping " + playlists.size() + " playlists", e);
+        }
+        return playlists;
+    }
+
+    private static List<Song> readSongs(JsonReader reader, Map<String, String> pool) throws IOException {
+        List<Song> songs = new ArrayList<>();
+        reader.beginArray();
+        while (reader.hasNext()) {
+            if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+                reader.skipValue();
+                continue;
+            }
+            Song song = readSong(reader, pool);
+            if (!song.videoId.isEmpty()) songs.add(song);
+        }
+        reader.endArray();
+        return songs;
+    }
+
+    private static Song emptySong() {
+        Song song = new Song();
+        song.videoId = "";
+        song.title = "";
+        song.artist = "";
+        song.thumbnailUrl = "";
+        return song;
+    }
+
+    private static Song readSong(JsonReader reader, Map<String, String> pool) throws IOException {
+        Song song = emptySong();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "videoId":
+                    song.videoId = readString(reader);
+                    break;
+                case "title":
+                    song.title = readString(reader);
+                    break;
+                case "artist":
+                    song.artist = share(pool, readString(reader));
+                    break;
+                case "thumbnailUrl":
+                    song.thumbnailUrl = share(pool, readString(reader));
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+            }
+        }
+        reader.endObject();
+        return song;
+    }
+
+    private static String readString(JsonReader reader) throws IOException {
+        JsonToken token = reader.peek();
+        if (token == JsonToken.NULL) {
+            reader.nextNull();
+            return "";
+        }
+        if (token == JsonToken.BEGIN_OBJECT || token == JsonToken.BEGIN_ARRAY) {
+            reader.skipValue();
+            return "";
+        }
+        if (token == JsonToken.BOOLEAN) return String.valueOf(reader.nextBoolean());
+        // nextString() also coerces numbers, matching optString()
+        return reader.nextString();
+    }
+
+    // Artists (and channel-level thumbnails) repeat heavily in imported channels and radio queues
+    private static String share(Map<String, String> pool, String value) {
+        if (value.isEmpty()) return "";
+        String existing = pool.get(value);
+        if (existing != null) return existing;
+        pool.put(value, value);
+        return value;
+    }
+}
@@ -0,0 +1,97 @@
+package com.streamtune.app;
+
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Warms artwork for the songs around the current one so a skip finds it in the
+ * memory cache. Work is tagged with a generation; any playlist or index change
+ * bumps it, which drains the queue and cancels the running task's token, so its
+ * download is cut off and its result never reaches the cache.
+ */
+public class PrefetchScheduler {
+
+    private static final String TAG = "PrefetchScheduler";
+    private static final int MAX_QUEUED = 8;
+
+    /** Loads (and caches) the artwork for a URL. Runs on the prefetch thread; must not cache once the token is cancelled. */
+    public interface Loader {
+        void load(String thumbnailUrl, ArtworkFetcher.Token token) throws Exception;
+    }
+
+    private final Loader loader;
+    private final AtomicInteger generation = new AtomicInteger();
+    private final ThreadPoolExecutor executor = new ThreadPoolExecutor(
+            1, 1, 0L, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(MAX_QUEUED),
+            new ThreadPoolExecutor.DiscardOldestPolicy());
+    private volatile int lookahead = 2;
+    private volatile ArtworkFetcher.Token running;
+
+    public PrefetchScheduler(Loader loader) {
+        this.loader = loader;
+    }
+
+    public void setLookahead(int lookahead) {
+        this.lookahead = Math.max(0, lookahead);
+    }
+
+    public int getLookahead() {
+        return lookahead;
+    }
+
+    /** Called on the main thread whenever the current index starts playing. */
+    public void schedule(List<Song> playlist, int currentIndex) {
+        int gen = cancel();
+        // Snapshot URLs here so the worker never touches the live playlist
+        List<String> urls = new ArrayList<>();
+        for (int i = 1; i <= lookahead; i++) {
+            addUrl(urls, playlist, currentIndex + i);
+        }
+        addUrl(urls, playlist, currentIndex - 1);
+
+        for (String url : urls) {
+            executor.execute(() -> {
+                // No cache check here: only the loader knows which size variant is the key
+                if (generation.get() != gen) return;
+                ArtworkFetcher.Token token = new ArtworkFetcher.Token();
+                running = token;
+                // A cancel() between the check above and publishing the token must still land
+                if (generation.get() != gen) return;
+                try {
+                    loader.load(url, token);
+                } catch (Exception e) {
+                    if (!token.isCancelled()) Log.w(TAG, "Prefetch failed for " + url, e);
+                } finally {
+                    running = null;
+                }
+            });
+        }
+    }
+
+    /** Drops queued work and invalidates whatever is running. Returns the new generation. */
+    public int cancel() {
+        executor.getQueue().clear();
+        int gen = generation.incrementAndGet();
+        ArtworkFetcher.Token token = running;
+        if (token != null) token.cancel();
+        return gen;
+    }
+
+    public void shutdown() {
+        cancel();
+        executor.shutdownNow();
+    }
+
+    private static void addUrl(List<String> urls, List<Song> playlist, int index) {
+        if (index < 0 || index >= playlist.size()) return;
+        String url = playlist.get(index).thumbnailUrl;
+        if (url != null && !url.isEmpty() && !urls.contains(url)) urls.add(url);
+    }
+}
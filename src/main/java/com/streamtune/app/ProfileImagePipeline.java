@@ -0,0 +1,91 @@
+package com.streamtune.app;
+
+import android.content.ContentResolver;
+import android.graphics.Bitmap;
+import android.graphics.Matrix;
+import android.media.ExifInterface;
+import android.net.Uri;
+import android.os.Build;
+import android.util.Log;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Turns a picked photo into a small upright JPEG. Decoding goes through
+ * ArtworkDecoder, so a 12 MP image never exists at full size in memory; the EXIF
+ * orientation camera apps write instead of rotating pixels is applied afterwards
+ * on the already-downscaled bitmap. Photos decode as ARGB_8888: a gradient sky in
+ * RGB_565 would band and then be saved that way.
+ */
+public class ProfileImagePipeline {
+
+    private static final String TAG = "ProfileImagePipeline";
+    private static final int JPEG_QUALITY = 85;
+
+    private final ArtworkDecoder decoder;
+
+    public ProfileImagePipeline(int maxDimension) {
+        this.decoder = new ArtworkDecoder(maxDimension, false);
+    }
+
+    /** Encoded JPEG bytes of the processed image. Blocks on I/O and decoding; call off main. */
+    public byte[] process(ContentResolver resolver, Uri uri) throws IOException {
+        Bitmap decoded = decoder.decode(resolver, uri);
+        if (decoded == null) throw new IOException("Unable to decode " + uri);
+        Bitmap upright = applyOrientation(decoded, readOrientation(resolver, uri));
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(64 * 1024);
+            upright.compress(Bitmap.CompressFormat.JPEG, JPEG_QUALITY, out);
+            return out.toByteArray();
+        } finally {
+            upright.recycle();
+            if (upright != decoded) decoded.recycle();
+        }
+    }
+
+    private static int readOrientation(ContentResolver resolver, Uri uri) {
+        // Reading EXIF from a stream needs API 24; older devices get the image as stored
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.N) return ExifInterface.ORIENTATION_NORMAL;
+        try (InputStream in = resolver.openInputStream(uri)) {
+            if (in == null) return ExifInterface.ORIENTATION_NORMAL;
+            return new ExifInterface(in).getAttributeInt(ExifInterface.TAG_ORIENTATION, ExifInterface.ORIENTATION_NORMAL);
+        } catch (IOException | RuntimeException e) {
+            Log.w(TAG, "No readable EXIF in " + uri, e);
+            return ExifInterface.ORIENTATION_NORMAL;
+        }
+    }
+
+    private static Bitmap applyOrientation(Bitmap bitmap, int orientation) {
+        Matrix matrix = new Matrix();
+        switch (orientation) {
+            case ExifInterface.ORIENTATION_FLIP_HORIZONTAL:
+                matrix.setScale(-1, 1);
+                break;
+            case ExifInterface.ORIENTATION_ROTATE_180:
+                matrix.setRotate(180);
+                break;
+            case ExifInterface.ORIENTATION_FLIP_VERTICAL:
+                matrix.setScale(1, -1);
+                break;
+            case ExifInterface.ORIENTATION_TRANSPOSE:
+                matrix.setRotate(90);
+                matrix.postScale(-1, 1);
+                break;
+            case ExifInterface.ORIENTATION_ROTATE_90:
+                matrix.setRotate(90);
+                break;
+            case ExifInterface.ORIENTATION_TRANSVERSE:
+                matrix.setRotate(-90);
+                matrix.postScale(-1, 1);
+                break;
+            case ExifInterface.ORIENTATION_ROTATE_270:
+                matrix.setRotate(-90);
+                break;
+            default:
+                return bitmap;
+        }
+        return Bitmap.createBitmap(bitmap, 0, 0, bitmap.getWidth(), bitmap.getHeight(), matrix, true);
+    }
+}
@@ -0,0 +1,127 @@
+package com.streamtune.app;
+
+import android.content.ComponentCallbacks2;
+import android.content.res.Configuration;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Sheds caches and pools when the system is short on memory, so the OS has a
+ * reason to keep the playback process instead of killing it. Resources are
+ * registered cheapest-to-rebuild first, each with the lowest grade at which it
+ * gives memory back; a trim walks them in that order and logs what each freed.
+ * Callbacks arrive on the main thread, and so must registration.
+ */
+public class ResourceManager implements ComponentCallbacks2 {
+
+    private static final String TAG = "ResourceManager";
+
+    /** Pressure grades, mapped from the trim levels below. */
+    public static final int GRADE_LIGHT = 1;
+    public static final int GRADE_MEDIUM = 2;
+    public static final int GRADE_HEAVY = 3;
+
+    /** For resources that can't put a byte count on what they hold. */
+    public static final long UNKNOWN_SIZE = -1;
+
+    public interface Trimmable {
+        /** Bytes currently held, or UNKNOWN_SIZE. */
+        long sizeBytes();
+
+        void trim(int grade);
+    }
+
+    private static final class Entry {
+        final String name;
+        final int minGrade;
+        final Trimmable trimmable;
+
+        Entry(String name, int minGrade, Trimmable trimmable) {
+            this.name = name;
+            this.minGrade = minGrade;
+            this.trimmable = trimmable;
+        }
+    }
+
+    private final List<Entry> entries = new ArrayList<>();
+    private int trimCount;
+    private String lastReport = "none";
+
+    /** Shed order follows registration order. */
+    public void register(String name, int minGrade, Trimmable trimmable) {
+        entries.add(new Entry(name, minGrade, trimmable));
+    }
+
+    public void unregisterAll() {
+        entries.clear();
+    }
+
+    /** Graded by how close the process is to being killed, not by the raw level value. */
+    static int gradeFor(int level) {
+        if (level >= TRIM_MEMORY_COMPLETE || level == TRIM_MEMORY_RUNNING_CRITICAL) return GRADE_HEAVY;
+        if (level >= TRIM_MEMORY_MODERATE) return GRADE_MEDIUM;
+        if (level >= TRIM_MEMORY_BACKGROUND || level == TRIM_MEMORY_RUNNING_LOW) return GRADE_LIGHT;
+        // RUNNING_MODERATE is a hint, and UI_HIDDEN just means the user went elsewhere:
+        // playback and prefetch keep going in the background, so they keep what they hold
+        return 0;
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        int grade = gradeFor(level);
+        if (grade == 0) return;
+        long started = SystemClock.uptimeMillis();
+        long freedBytes = 0;
+        StringBuilder report = new StringBuilder();
+        for (Entry entry : new ArrayList<>(entries)) {
+            if (entry.minGrade > grade) continue;
+            long before = entry.trimmable.sizeBytes();
+            entry.trimmable.trim(grade);
+            long after = entry.trimmable.sizeBytes();
+            if (report.length() > 0) report.append(", ");
+            report.append(entry.name);
+            if (before != UNKNOWN_SIZE && after != UNKNOWN_SIZE) {
+                long freed = Math.max(0, before - after);
+                freedBytes += freed;
+                report.append('=').append(formatBytes(freed));
+            }
+        }
+        trimCount++;
+        lastReport = "level=" + level + " grade=" + grade + " freed " + formatBytes(freedBytes)
+                + " [" + report + "] in " + (SystemClock.uptimeMillis() - started) + "ms";
+        Log.i(TAG, "onTrimMemory " + lastReport);
+    }
+
+    @Override
+    public void onLowMemory() {
+        // Only sent on very old releases, and only once it is already this bad
+        onTrimMemory(TRIM_MEMORY_COMPLETE);
+    }
+
+    @Override
+    public void onConfigurationChanged(@NonNull Configuration newConfig) {
+    }
+
+    public void dump(PrintWriter writer) {
+        StringBuilder held = new StringBuilder();
+        for (Entry entry : entries) {
+            long size = entry.trimmable.sizeBytes();
+            if (held.length() > 0) held.append(' ');
+            held.append(entry.name).append('=').append(size == UNKNOWN_SIZE ? "?" : formatBytes(size));
+        }
+        writer.println("Resources: " + held + " trims=" + trimCount + " last=" + lastReport);
+    }
+
+    private static String formatBytes(long bytes) {
+        if (bytes < 1024) return bytes + "B";
+        if (bytes < 1024 * 1024) return String.format(Locale.US, "%.1fKB", bytes / 1024f);
+        return String.format(Locale.US, "%.1fMB", bytes / (1024f * 1024f));
+    }
+}
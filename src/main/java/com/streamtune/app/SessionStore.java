@@ -0,0 +1,253 @@
+package com.streamtune.app;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.SystemClock;
+import android.util.AtomicFile;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Persists the playback session (queue, index, position, sleep-timer deadline) so a
+ * low-memory kill doesn't lose it. The queue and the small playback state live in
+ * separate files: position ticks only rewrite the few-byte state file, the queue
+ * file is rewritten only when the queue itself changed. Writes are batched on the
+ * given handler and go through AtomicFile, so there is at most one fsync pair per
+ * flush interval and a crash mid-write leaves the previous snapshot intact.
+ */
+public class SessionStore {
+
+    private static final String TAG = "SessionStore";
+    private static final int MAGIC = 0x53545353; // "STSS"
+    private static final int FORMAT_VERSION = 1;
+    private static final long FLUSH_INTERVAL_MS = 5000;
+
+    public static final class Session {
+        public final List<Song> queue;
+        public final int index;
+        public final long positionMs;
+        /** Wall-clock time the sleep timer fires, or 0 if none was set. */
+        public final long sleepDeadlineMs;
+
+        Session(List<Song> queue, int index, long positionMs, long sleepDeadlineMs) {
+            this.queue = queue;
+            this.index = index;
+            this.positionMs = positionMs;
+            this.sleepDeadlineMs = sleepDeadlineMs;
+        }
+    }
+
+    private final AtomicFile queueFile;
+    private final AtomicFile stateFile;
+    private final Handler handler;
+    private final Runnable flushRunnable = this::flushNow;
+
+    // Guarded by this; written from the main thread, read by the flush on the handler thread
+    private List<Song> pendingQueue;
+    private long queueVersion;
+    private int index = -1;
+    private long positionMs;
+    private long sleepDeadlineMs;
+    private boolean stateDirty;
+    private boolean flushScheduled;
+    private long lastFlushAt;
+    private boolean cleared; // position and timer updates are ignored until a new queue arrives
+
+    public SessionStore(Context context, Handler handler) {
+        File dir = new File(context.getFilesDir(), "session");
+        // No mkdirs here: this runs on main, and AtomicFile.startWrite creates the directory itself
+        this.queueFile = new AtomicFile(new File(dir, "queue.bin"));
+        this.stateFile = new AtomicFile(new File(dir, "state.bin"));
+        this.handler = handler;
+    }
+
+    /** The list must not change afterwards; the service passes its immutable PlayerState queue. */
+    public synchronized void setQueue(List<Song> queue) {
+        cleared = false;
+        pendingQueue = queue;
+        queueVersion++;
+        stateDirty = true;
+        scheduleFlush();
+    }
+
+    public synchronized void setPosition(int index, long positionMs) {
+        if (cleared) return;
+        if (this.index == index && Math.abs(this.positionMs - positionMs) < 1000) return;
+        this.index = index;
+        this.positionMs = positionMs;
+        stateDirty = true;
+        scheduleFlush();
+    }
+
+    public synchronized void setSleepDeadline(long wallClockMs) {
+        if (cleared) return;
+        sleepDeadlineMs = wallClockMs;
+        stateDirty = true;
+        scheduleFlush();
+    }
+
+    /**
+     * Forgets the session after an explicit stop or the end of the queue, so the
+     * next unrelated service start doesn't bring it back. The files are deleted on
+     * the handler, behind any flush already queued there.
+     */
+    public synchronized void clear() {
+        cleared = true;
+        pendingQueue = null;
+        index = -1;
+        positionMs = 0;
+        sleepDeadlineMs = 0;
+        stateDirty = false;
+        handler.removeCallbacks(flushRunnable);
+        flushScheduled = false;
+        handler.post(() -> {
+            queueFile.delete();
+            stateFile.delete();
+        });
+    }
+
+    /** Writes whatever is pending. Runs on the handler thread, or directly at shutdown. */
+    public void flushNow() {
+        List<Song> queue;
+        long version;
+        int idx;
+        long pos;
+        long deadline;
+        synchronized (this) {
+            handler.removeCallbacks(flushRunnable);
+            flushScheduled = false;
+            if (!stateDirty) return;
+            queue = pendingQueue;
+            pendingQueue = null;
+            version = queueVersion;
+            idx = index;
+            pos = positionMs;
+            deadline = sleepDeadlineMs;
+            stateDirty = false;
+            lastFlushAt = SystemClock.uptimeMillis();
+        }
+        try {
+            if (queue != null) writeQueue(queue, version);
+            writeState(version, idx, pos, deadline);
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to persist session", e);
+            synchronized (this) {
+                // Keep the data for the next attempt rather than losing a queue change
+                if (pendingQueue == null) pendingQueue = queue;
+                stateDirty = true;
+            }
+        }
+    }
+
+    /** Reads the last snapshot, or null if there is none or the two files don't belong together. */
+    @Nullable
+    public Session restore() {
+        try (DataInputStream state = new DataInputStream(new BufferedInputStream(stateFile.openRead()));
+             DataInputStream queue = new DataInputStream(new BufferedInputStream(queueFile.openRead()))) {
+            if (state.readInt() != MAGIC || state.readInt() != FORMAT_VERSION) return null;
+            long stateQueueVersion = state.readLong();
+            int idx = state.readInt();
+            long pos = state.readLong();
+            long deadline = state.readLong();
+
+            if (queue.readInt() != MAGIC || queue.readInt() != FORMAT_VERSION) return null;
+            long version = queue.readLong();
+            if (version != stateQueueVersion) return null;
+            int count = queue.readInt();
+            List<Song> songs = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                Song song = new Song();
+                song.videoId = readString(queue);
+                song.title = readString(queue);
+                song.artist = readString(queue);
+                song.thumbnailUrl = readString(queue);
+                songs.add(song);
+            }
+            synchronized (this) {
+                // Continue numbering after the restored snapshot so the next write stays consistent
+                queueVersion = version;
+                index = idx;
+                positionMs = pos;
+                sleepDeadlineMs = deadline;
+            }
+            return new Session(songs, idx, pos, deadline);
+        } catch (IOException e) {
+            // Missing files are the normal first-run case
+            return null;
+        }
+    }
+
+    private void scheduleFlush() {
+        if (flushScheduled) return;
+        flushScheduled = true;
+        long wait = lastFlushAt + FLUSH_INTERVAL_MS - SystemClock.uptimeMillis();
+        handler.postDelayed(flushRunnable, Math.max(0, wait));
+    }
+
+    private void writeQueue(List<Song> queue, long version) throws IOException {
+        FileOutputStream fos = queueFile.startWrite();
+        try {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos));
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeLong(version);
+            out.writeInt(queue.size());
+            for (Song song : queue) {
+                writeString(out, song.videoId);
+                writeString(out, song.title);
+                writeString(out, song.artist);
+                writeString(out, song.thumbnailUrl);
+            }
+            out.flush();
+            queueFile.finishWrite(fos);
+        } catch (IOException e) {
+            queueFile.failWrite(fos);
+            throw e;
+        }
+    }
+
+    private void writeState(long version, int idx, long pos, long deadline) throws IOException {
+        FileOutputStream fos = stateFile.startWrite();
+        try {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos));
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeLong(version);
+            out.writeInt(idx);
+            out.writeLong(pos);
+            out.writeLong(deadline);
+            out.flush();
+            stateFile.finishWrite(fos);
+        } catch (IOException e) {
+            stateFile.failWrite(fos);
+            throw e;
+        }
+    }
+
+    // Length-prefixed UTF-8; unlike writeUTF this has no 64 KB limit per string
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = (value != null ? value : "").getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0 || length > (1 << 20)) throw new IOException("Corrupt session string");
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,121 @@
+package com.streamtune.app;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The pending native-to-web state deltas and their JSON form. Plain Java with no
+ * framework types, so the per-tick merge and serialise path can run on the JVM.
+ * Not thread-safe; UiUpdateChannel guards it.
+ */
+final class UiSnapshot {
+
+    private boolean hasCurrentTime;
+    private float currentTime;
+    private boolean hasPlaying;
+    private boolean playing;
+    private boolean hasNewSongIndex;
+    private int newSongIndex;
+    private boolean fetchMore;
+    private final List<String> quarantined = new ArrayList<>();
+    private List<Song> queue; // null unless the service replaced the queue on its own
+
+    void setCurrentTime(float second) {
+        hasCurrentTime = true;
+        currentTime = second;
+    }
+
+    void clearCurrentTime() {
+        hasCurrentTime = false;
+    }
+
+    void setPlaying(boolean isPlaying) {
+        hasPlaying = true;
+        playing = isPlaying;
+    }
+
+    void setNewSongIndex(int index) {
+        hasNewSongIndex = true;
+        newSongIndex = index;
+        // A time from the previous track must not ride along with the new index
+        hasCurrentTime = false;
+    }
+
+    void setFetchMore() {
+        fetchMore = true;
+    }
+
+    /** The list must not change afterwards; a later queue replaces an unsent one. */
+    void setQueue(List<Song> songs) {
+        queue = songs;
+    }
+
+    void addQuarantined(List<String> videoIds) {
+        quarantined.addAll(videoIds);
+    }
+
+    int pendingCount() {
+        return (hasCurrentTime ? 1 : 0) + (hasPlaying ? 1 : 0) + (hasNewSongIndex ? 1 : 0) + (fetchMore ? 1 : 0)
+                + (quarantined.isEmpty() ? 0 : 1) + (queue != null ? 1 : 0);
+    }
+
+    /** Appends the pending fields as one JSON object into a reused builder and clears them. */
+    void drainTo(StringBuilder json) {
+        json.setLength(0);
+        json.append('{');
+        if (queue != null) appendQueue(json);
+        if (hasNewSongIndex) appendField(json, "newSongIndex").append(newSongIndex);
+        if (hasPlaying) appendField(json, "isPlaying").append(playing);
+        if (hasCurrentTime) appendField(json, "currentTime").append(currentTime);
+        if (fetchMore) appendField(json, "fetchMore").append(true);
+        if (!quarantined.isEmpty()) {
+            appendField(json, "quarantined").append('[');
+            for (int i = 0; i < quarantined.size(); i++) {
+                if (i > 0) json.append(',');
+                appendString(json, quarantined.get(i));
+            }
+            json.append(']');
+        }
+        json.append('}');
+        hasCurrentTime = hasPlaying = hasNewSongIndex = fetchMore = false;
+        quarantined.clear();
+        queue = null;
+    }
+
+    private void appendQueue(StringBuilder json) {
+        appendField(json, "queue").append('[');
+        for (int i = 0; i < queue.size(); i++) {
+            Song song = queue.get(i);
+            if (i > 0) json.append(',');
+            json.append("{\"videoId\":");
+            appendString(json, song.videoId != null ? song.videoId : "");
+            json.append(",\"title\":");
+            appendString(json, song.title != null ? song.title : "");
+            json.append(",\"artist\":");
+            appendString(json, song.artist != null ? song.artist : "");
+            json.append(",\"thumbnailUrl\":");
+            appendString(json, song.thumbnailUrl != null ? song.thumbnailUrl : "");
+            json.append('}');
+        }
+        json.append(']');
+    }
+
+    // The result is evaluated as a JS literal: quotes, backslashes and line breaks must not survive raw
+    private static void appendString(StringBuilder json, String value) {
+        json.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\' || c < 0x20 || c == '\u2028' || c == '\u2029') {
+                json.append(String.format("\\u%04x", (int) c));
+            } else {
+                json.append(c);
+            }
+        }
+        json.append('"');
+    }
+
+    private static StringBuilder appendField(StringBuilder json, String name) {
+        if (json.length() > 1) json.append(',');
+        return json.append('"').append(name).append("\":");
+    }
+}
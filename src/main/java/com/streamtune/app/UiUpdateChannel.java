@@ -0,0 +1,144 @@
+package com.streamtune.app;
+
+import android.content.Context;
+import android.content.Intent;
+import android.os.Handler;
+import android.os.SystemClock;
+
+import androidx.localbroadcastmanager.content.LocalBroadcastManager;
+
+import java.util.List;
+
+/**
+ * Native-to-web state channel. Deltas posted between flushes are merged into one
+ * snapshot and sent as a single UPDATE_UI broadcast at most once a frame.
+ * Time ticks are dropped while the web UI is not visible; discrete events
+ * (play state, song index, fetchMore) are always delivered.
+ */
+public class UiUpdateChannel {
+
+    public static final String ACTION_UPDATE_UI = "UPDATE_UI";
+    public static final String ACTION_UI_VISIBILITY = "UI_VISIBILITY";
+    public static final String EXTRA_STATE_JSON = "STATE_JSON";
+    public static final String EXTRA_VISIBLE = "VISIBLE";
+
+    /** Roughly one frame at 60 Hz; the page can't show updates any faster, so this is fixed. */
+    private static final long MIN_INTERVAL_MS = 16;
+
+    private final LocalBroadcastManager broadcastManager;
+    private final Handler handler;
+    private final StringBuilder json = new StringBuilder(96);
+    private final Runnable flushRunnable = this::flush;
+
+    private long lastFlushAt;
+    private boolean flushScheduled;
+    private boolean uiVisible = true;
+
+    private final UiSnapshot pending = new UiSnapshot();
+    private float lastKnownTime;
+
+    private long flushCount;
+    private long mergedCount;
+
+    public UiUpdateChannel(Context context, Handler handler) {
+        this.broadcastManager = LocalBroadcastManager.getInstance(context);
+        this.handler = handler;
+    }
+
+    public synchronized void postCurrentTime(float second) {
+        lastKnownTime = second;
+        if (!uiVisible) return;
+        pending.setCurrentTime(second);
+        scheduleFlush();
+    }
+
+    public synchronized void postPlaying(boolean isPlaying) {
+        pending.setPlaying(isPlaying);
+        scheduleFlush();
+    }
+
+    public synchronized void postNewSongIndex(int index) {
+        pending.setNewSongIndex(index);
+        scheduleFlush();
+    }
+
+    public synchronized void postFetchMore() {
+        pending.setFetchMore();
+        scheduleFlush();
+    }
+
+    /** A queue the service chose itself (e.g. from a media browser); the page must adopt it before the next index. */
+    public synchronized void postQueue(List<Song> songs) {
+        pending.setQueue(songs);
+        scheduleFlush();
+    }
+
+    /** Video IDs that failed to play; like the other discrete events, sent even while hidden. */
+    public synchronized void postQuarantined(List<String> videoIds) {
+        if (videoIds.isEmpty()) return;
+        pending.addQuarantined(videoIds);
+        scheduleFlush();
+    }
+
+    /** Becoming visible re-sends the last known position so the page catches up immediately. */
+    public synchronized void setUiVisible(boolean visible) {
+        if (uiVisible == visible) return;
+        uiVisible = visible;
+        if (visible) {
+            pending.setCurrentTime(lastKnownTime);
+            scheduleFlush();
+        } else {
+            pending.clearCurrentTime();
+        }
+    }
+
+    public synchronized boolean isUiVisible() {
+        return uiVisible;
+    }
+
+    public synchronized int pendingCount() {
+        return pending.pendingCount();
+    }
+
+    public synchronized long getFlushCount() {
+        return flushCount;
+    }
+
+    /** Deltas that were folded into an already-pending snapshot instead of costing their own broadcast. */
+    public synchronized long getMergedCount() {
+        return mergedCount;
+    }
+
+    public synchronized void release() {
+        handler.removeCallbacks(flushRunnable);
+        flushScheduled = false;
+    }
+
+    private void scheduleFlush() {
+        PlaybackTrace.counter(PlaybackTrace.COUNTER_UI_UPDATES, pending.pendingCount());
+        if (flushScheduled) {
+            mergedCount++;
+            return;
+        }
+        flushScheduled = true;
+        long wait = lastFlushAt + MIN_INTERVAL_MS - SystemClock.uptimeMillis();
+        handler.postDelayed(flushRunnable, Math.max(0, wait));
+    }
+
+    private void flush() {
+        String state;
+        synchronized (this) {
+            flushScheduled = false;
+            if (pending.pendingCount() == 0) return;
+
+            pending.drainTo(json);
+            PlaybackTrace.counter(PlaybackTrace.COUNTER_UI_UPDATES, 0);
+            state = json.toString();
+            lastFlushAt = SystemClock.uptimeMillis();
+            flushCount++;
+        }
+        Intent intent = new Intent(ACTION_UPDATE_UI);
+        intent.putExtra(EXTRA_STATE_JSON, state);
+        broadcastManager.sendBroadcast(intent);
+    }
+}
@@ -3,6 +3,7 @@ package com.streamtune.app;
 import android.content.Context;
 import android.content.Intent;
 import android.content.pm.PackageManager;
+import android.os.SystemClock;
 import androidx.localbroadcastmanager.content.LocalBroadcastManager;
 import android.webkit.JavascriptInterface;
 
@@ -26,8 +27,53 @@ public class WebAppInterface {
     public void startPlayback(String playlistJson, int currentIndex) {
         Intent intent = new Intent(context, MusicPlayerService.class);
         intent.setAction("PLAY_PLAYLIST");
-        intent.putExtra("PLAYLIST_JSON", playlistJson);
-        intent.putExtra("CURRENT_INDEX", currentIndex);
+        intent.putExtra("REQUESTED_AT", SystemClock.uptimeMillis());
+        // The service ends the dispatch slice and carries the track slice on to PLAYING
+        int traceCookie = PlaybackTrace.beginAsync(PlaybackTrace.TRACK_LOAD);
+        PlaybackTrace.beginAsync(PlaybackTrace.BRIDGE_DISPATCH, traceCookie);
+        if (traceCookie != 0) intent.putExtra(PlaybackTrace.EXTRA_COOKIE, traceCookie);
+        boolean traced = PlaybackTrace.begin("WebAppInterface.startPlayback");
+        try {
+            PlaylistHandoff.attach(context, intent, "PLAYLIST_JSON", playlistJson);
+            intent.putExtra("CURRENT_INDEX", currentIndex);
+            context.startService(intent);
+        } finally {
+            PlaybackTrace.end(traced);
+        }
+    }
+
+    /** Adds songs to the end of the native queue without restarting the current track. */
+    @JavascriptInterface
+    public void appendToQueue(String songsJson) {
+        Intent intent = new Intent(context, MusicPlayerService.class);
+        intent.setAction("QUEUE_APPEND");
+        PlaylistHandoff.attach(context, intent, "PLAYLIST_JSON", songsJson);
+        context.startService(intent);
+    }
+
+    @JavascriptInterface
+    public void insertIntoQueue(String songsJson, int index) {
+        Intent intent = new Intent(context, MusicPlayerService.class);
+        intent.setAction("QUEUE_INSERT");
+        PlaylistHandoff.attach(context, intent, "PLAYLIST_JSON", songsJson);
+        intent.putExtra("QUEUE_INDEX", index);
+        context.startService(intent);
+    }
+
+    @JavascriptInterface
+    public void removeFromQueue(int index) {
+        Intent intent = new Intent(context, MusicPlayerService.class);
+        intent.setAction("QUEUE_REMOVE");
+        intent.putExtra("QUEUE_INDEX", index);
+        context.startService(intent);
+    }
+
+    @JavascriptInterface
+    public void moveInQueue(int fromIndex, int toIndex) {
+        Intent intent = new Intent(context, MusicPlayerService.class);
+        intent.setAction("QUEUE_MOVE");
+        intent.putExtra("QUEUE_FROM", fromIndex);
+        intent.putExtra("QUEUE_TO", toIndex);
         context.startService(intent);
     }
 
@@ -39,6 +85,24 @@ public class WebAppInterface {
         context.startService(intent);
     }
 
+    /** Turns the standby player used for gapless transitions on or off (off saves memory). */
+    @JavascriptInterface
+    public void setGaplessPlayback(boolean enabled) {
+        Intent intent = new Intent(context, MusicPlayerService.class);
+        intent.setAction("SET_GAPLESS");
+        intent.putExtra("GAPLESS_ENABLED", enabled);
+        context.startService(intent);
+    }
+
+    /** The user's playlists, [{id, name, songs: [...]}], shown to Android Auto and other media browsers. */
+    @JavascriptInterface
+    public void setSavedPlaylists(String playlistsJson) {
+        Intent intent = new Intent(context, MusicPlayerService.class);
+        intent.setAction("SET_SAVED_PLAYLISTS");
+        PlaylistHandoff.attach(context, intent, "PLAYLIST_JSON", playlistsJson);
+        context.startService(intent);
+    }
+
     private void sendMediaCommand(String action) {
         Intent intent = new Intent(context, MusicPlayerService.class);
         intent.setAction(action);
@@ -73,6 +137,49 @@ public class WebAppInterface {
         context.startService(intent);
     }
 
+    /** Latency and stall histograms as JSON: counts per bucket plus p50/p99 bucket bounds. */
+    @JavascriptInterface
+    public String getPlaybackMetrics() {
+        return PlaybackMetrics.get().toJson();
+    }
+
+    /**
+     * One page of the on-device library for source ("user" or "community"):
+     * {"total":n,"playlists":[...]}. Reads SQLite on the bridge thread, never main.
+     */
+    @JavascriptInterface
+    public String getLibraryPlaylists(String source, int offset, int limit) {
+        return LibraryStore.get(context).getPlaylists(source, offset, limit);
+    }
+
+    /** One page of stored tracks, most recently written first: {"total":n,"tracks":[...]}. */
+    @JavascriptInterface
+    public String getLibraryTracks(int offset, int limit) {
+        return LibraryStore.get(context).getTracks(offset, limit);
+    }
+
+    /** Tracks played by the native player, newest first: {"total":n,"history":[{videoId,playedAt,track?}]}. */
+    @JavascriptInterface
+    public String getPlayHistory(int offset, int limit) {
+        return LibraryStore.get(context).getHistory(offset, limit);
+    }
+
+    /**
+     * Streams source's playlists from offset on to window.onNativeLibraryPage(requestId,
+     * offset, page), a page at a time, off the bridge thread; returns at once. For
+     * everything after the first page, which the page reads synchronously.
+     */
+    @JavascriptInterface
+    public void requestLibraryPlaylists(String source, int offset, int requestId) {
+        LibraryStore.get(context).streamPlaylistsAsync(source, offset, requestId);
+    }
+
+    /** Replaces every stored playlist of source with this array in one transaction; returns at once. */
+    @JavascriptInterface
+    public void putLibraryPlaylists(String source, String playlistsJson) {
+        LibraryStore.get(context).putPlaylistsAsync(source, playlistsJson);
+    }
+
     @JavascriptInterface
     public void signInWithGoogle() {
         Intent intent = new Intent("SIGN_IN_GOOGLE");
@@ -0,0 +1,479 @@
+package com.streamtune.app;
+
+import android.content.Context;
+import android.net.Uri;
+import android.util.Log;
+import android.webkit.WebResourceRequest;
+import android.webkit.WebResourceResponse;
+
+import androidx.annotation.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Disk cache for the web app's static assets, consulted from shouldInterceptRequest.
+ * Next.js build output under /_next/static/ is content-hashed, so it is served from
+ * disk without ever revalidating. Other same-origin static files (icons, fonts,
+ * images) are served stale-while-revalidate: a cached copy answers immediately and,
+ * once older than the freshness window, a conditional request refreshes it in the
+ * background. Pages, API routes, non-GET requests and other origins are not
+ * intercepted. The origin is a constructor argument so a local HTTP stand-in can
+ * take the place of production.
+ *
+ * A miss is answered with the network response itself, copied to disk as the
+ * WebView reads it, so nothing is downloaded twice; no-store responses and errors
+ * are passed through without the copy.
+ *
+ * File layout: magic, fetchedAt, url, content type, encoding, ETag, Last-Modified,
+ * Cache-Control, then the body. fetchedAt is fixed-size at a known offset so a 304
+ * only rewrites those eight bytes.
+ */
+public class WebAssetCache {
+
+    private static final String TAG = "WebAssetCache";
+    private static final String DIR_NAME = "web-assets";
+    private static final int MAGIC = 0x53545742; // "STWB"; older "STWA" entries read as misses
+    private static final long FETCHED_AT_OFFSET = 4;
+    private static final String IMMUTABLE_PREFIX = "/_next/static/";
+    private static final String IMMUTABLE_CACHE_CONTROL = "public, max-age=31536000, immutable";
+    private static final long FRESH_MS = 60L * 60 * 1000;
+    private static final int TIMEOUT_MS = 10000;
+    private static final Set<String> STATIC_EXTENSIONS = new HashSet<>(Arrays.asList(
+            "js", "css", "woff", "woff2", "ttf", "png", "jpg", "jpeg", "webp", "svg", "ico", "gif"));
+
+    private final String origin;
+    private final DiskLru disk;
+    private final ExecutorService revalidator = Executors.newSingleThreadExecutor();
+
+    // Guarded by this
+    private final Set<String> revalidating = new HashSet<>();
+    private long hits;
+    private long staleHits;
+    private long misses;
+    private long revalidated;
+    private long passThrough;
+
+    public WebAssetCache(Context context, String origin, long maxBytes) {
+        this.origin = stripTrailingSlash(origin);
+        this.disk = new DiskLru(new File(context.getCacheDir(), DIR_NAME), maxBytes);
+    }
+
+    /** 30 MB for the production origin. */
+    public static WebAssetCache create(Context context, String origin) {
+        return new WebAssetCache(context, origin, 30L * 1024 * 1024);
+    }
+
+    /**
+     * Returns a response for cacheable assets, or null to let the WebView load the
+     * request itself. Runs on a WebView worker thread, so blocking I/O is fine here.
+     */
+    @Nullable
+    public WebResourceResponse intercept(WebResourceRequest request) {
+        Uri uri = request.getUrl();
+        if (!"GET".equalsIgnoreCase(request.getMethod()) || !isCacheable(uri)) {
+            count(Counter.PASS_THROUGH);
+            return null;
+        }
+        String url = uri.toString();
+        boolean immutable = uri.getPath().startsWith(IMMUTABLE_PREFIX);
+        File file = disk.file(url);
+        WebResourceResponse cached = open(file, url, immutable);
+        if (cached != null) {
+            if (!immutable && System.currentTimeMillis() - readFetchedAt(file) > FRESH_MS) {
+                count(Counter.STALE_HIT);
+                revalidateAsync(url, request.getRequestHeaders());
+            } else {
+                count(Counter.HIT);
+            }
+            DiskLru.touch(file);
+            return cached;
+        }
+        count(Counter.MISS);
+        return fetchThrough(url, request.getRequestHeaders(), immutable);
+    }
+
+    public void shutdown() {
+        revalidator.shutdownNow();
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "hits=" + hits + " staleHits=" + staleHits + " misses=" + misses
+                + " revalidated=" + revalidated + " passThrough=" + passThrough + " bytes=" + disk.sizeBytes();
+    }
+
+    private enum Counter { HIT, STALE_HIT, MISS, REVALIDATED, PASS_THROUGH }
+
+    private synchronized void count(Counter counter) {
+        switch (counter) {
+            case HIT: hits++; break;
+            case STALE_HIT: staleHits++; break;
+            case MISS: misses++; break;
+            case REVALIDATED: revalidated++; break;
+            case PASS_THROUGH: passThrough++; break;
+        }
+    }
+
+    private boolean isCacheable(Uri uri) {
+        String scheme = uri.getScheme();
+        String path = uri.getPath();
+        if (scheme == null || path == null || !uri.toString().startsWith(origin + "/")) return false;
+        if (path.startsWith(IMMUTABLE_PREFIX)) return true;
+        if (path.startsWith("/api/") || uri.getQuery() != null) return false;
+        int dot = path.lastIndexOf('.');
+        return dot > path.lastIndexOf('/') && STATIC_EXTENSIONS.contains(path.substring(dot + 1).toLowerCase(Locale.US));
+    }
+
+    /**
+     * Answers a miss straight from the network, teeing a cacheable 200 into the
+     * cache as it is read. Null (the WebView retries itself) only if the request
+     * failed outright or was redirected, which WebResourceResponse can't express.
+     */
+    @Nullable
+    private WebResourceResponse fetchThrough(String url, Map<String, String> requestHeaders, boolean immutable) {
+        HttpURLConnection connection = null;
+        try {
+            connection = connect(url, requestHeaders, null, null);
+            int code = connection.getResponseCode();
+            if (code < 200 || (code >= 300 && code < 400)) return null;
+            Meta meta = Meta.from(connection);
+            InputStream body = code >= 400 ? connection.getErrorStream() : connection.getInputStream();
+            if (body == null) body = new ByteArrayInputStream(new byte[0]);
+            String reason = connection.getResponseMessage();
+            PassThroughStream stream = new PassThroughStream(body, connection);
+            connection = null; // closed with the stream from here on
+            if (code == HttpURLConnection.HTTP_OK && !meta.isNoStore()) stream.teeTo(url, meta);
+            return new WebResourceResponse(meta.mime, meta.encodingOrNull(), code,
+                    reason != null && !reason.isEmpty() ? reason : "OK", meta.headers(immutable), stream);
+        } catch (IOException e) {
+            Log.w(TAG, "Asset fetch failed: " + url, e);
+            return null;
+        } finally {
+            if (connection != null) connection.disconnect();
+        }
+    }
+
+    private void revalidateAsync(String url, Map<String, String> requestHeaders) {
+        synchronized (this) {
+            if (!revalidating.add(url)) return;
+        }
+        revalidator.execute(() -> {
+            try {
+                Meta cached = readMeta(disk.file(url));
+                if (cached != null) revalidate(url, requestHeaders, cached);
+            } finally {
+                synchronized (this) {
+                    revalidating.remove(url);
+                }
+            }
+        });
+    }
+
+    /** Refreshes fetchedAt on a 304, or replaces the entry with a new 200. */
+    private void revalidate(String url, Map<String, String> requestHeaders, Meta cached) {
+        HttpURLConnection connection = null;
+        try {
+            connection = connect(url, requestHeaders, cached.etagOrNull(), cached.lastModifiedOrNull());
+            int code = connection.getResponseCode();
+            File file = disk.file(url);
+            if (code == HttpURLConnection.HTTP_NOT_MODIFIED && file.isFile()) {
+                writeFetchedAt(file, System.currentTimeMillis());
+                count(Counter.REVALIDATED);
+                return;
+            }
+            Meta meta = Meta.from(connection);
+            if (code != HttpURLConnection.HTTP_OK || meta.isNoStore()) return;
+            if (!disk.ensureDir()) return;
+            File tmp = disk.tempFor(file);
+            try (InputStream in = connection.getInputStream();
+                 DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+                writeHeader(out, url, meta);
+                byte[] buffer = new byte[8192];
+                int n;
+                while ((n = in.read(buffer)) != -1) out.write(buffer, 0, n);
+            } catch (IOException e) {
+                tmp.delete();
+                throw e;
+            }
+            disk.commit(tmp, file);
+        } catch (IOException e) {
+            Log.w(TAG, "Asset revalidation failed: " + url, e);
+        } finally {
+            if (connection != null) connection.disconnect();
+        }
+    }
+
+    private static HttpURLConnection connect(String url, Map<String, String> requestHeaders,
+                                             @Nullable String etag, @Nullable String lastModified) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        connection.setConnectTimeout(TIMEOUT_MS);
+        connection.setReadTimeout(TIMEOUT_MS);
+        for (Map.Entry<String, String> header : requestHeaders.entrySet()) {
+            // We store decoded, whole bodies; let HttpURLConnection negotiate gzip itself.
+            // The page's own validators would turn a miss into a 304 we have nothing to answer with
+            String name = header.getKey();
+            if ("Accept-Encoding".equalsIgnoreCase(name) || "Range".equalsIgnoreCase(name)
+                    || "If-None-Match".equalsIgnoreCase(name) || "If-Modified-Since".equalsIgnoreCase(name)) {
+                continue;
+            }
+            connection.setRequestProperty(name, header.getValue());
+        }
+        if (etag != null) connection.setRequestProperty("If-None-Match", etag);
+        if (lastModified != null) connection.setRequestProperty("If-Modified-Since", lastModified);
+        return connection;
+    }
+
+    private static void writeHeader(DataOutputStream out, String url, Meta meta) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeLong(System.currentTimeMillis());
+        out.writeUTF(url);
+        out.writeUTF(meta.mime);
+        out.writeUTF(meta.encoding);
+        out.writeUTF(meta.etag);
+        out.writeUTF(meta.lastModified);
+        out.writeUTF(meta.cacheControl);
+    }
+
+    @Nullable
+    private static WebResourceResponse open(File file, String url, boolean immutable) {
+        if (!file.isFile()) return null;
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            if (in.readInt() != MAGIC) throw new IOException("Bad magic");
+            in.readLong();
+            // Different URLs that hash alike must not be served for each other
+            if (!url.equals(in.readUTF())) throw new IOException("Hash collision");
+            Meta meta = Meta.read(in);
+            // The stream is left positioned at the body; the WebView reads and closes it
+            return new WebResourceResponse(meta.mime, meta.encodingOrNull(), 200, "OK", meta.headers(immutable), in);
+        } catch (IOException e) {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException ignored) {
+                }
+            }
+            return null;
+        }
+    }
+
+    private static long readFetchedAt(File file) {
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+            in.readInt();
+            return in.readLong();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private static void writeFetchedAt(File file, long fetchedAt) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.seek(FETCHED_AT_OFFSET);
+            raf.writeLong(fetchedAt);
+        }
+    }
+
+    /** The stored response metadata, or null if the entry is unreadable. */
+    @Nullable
+    private static Meta readMeta(File file) {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC) return null;
+            in.readLong();
+            in.readUTF();
+            return Meta.read(in);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /** Response metadata as stored on disk; absent values are empty strings. */
+    private static final class Meta {
+        final String mime;
+        final String encoding;
+        final String etag;
+        final String lastModified;
+        final String cacheControl;
+
+        Meta(String mime, String encoding, String etag, String lastModified, String cacheControl) {
+            this.mime = mime;
+            this.encoding = encoding;
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.cacheControl = cacheControl;
+        }
+
+        static Meta from(HttpURLConnection connection) {
+            String contentType = connection.getContentType();
+            String mime = "application/octet-stream";
+            String encoding = "";
+            if (contentType != null) {
+                String[] parts = contentType.split(";");
+                mime = parts[0].trim();
+                for (int i = 1; i < parts.length; i++) {
+                    String part = parts[i].trim();
+                    if (part.toLowerCase(Locale.US).startsWith("charset=")) encoding = part.substring(8);
+                }
+            }
+            return new Meta(mime, encoding, nonNull(connection.getHeaderField("ETag")),
+                    nonNull(connection.getHeaderField("Last-Modified")),
+                    nonNull(connection.getHeaderField("Cache-Control")));
+        }
+
+        static Meta read(DataInputStream in) throws IOException {
+            return new Meta(in.readUTF(), in.readUTF(), in.readUTF(), in.readUTF(), in.readUTF());
+        }
+
+        boolean isNoStore() {
+            return cacheControl.toLowerCase(Locale.US).contains("no-store");
+        }
+
+        @Nullable String encodingOrNull() {
+            return encoding.isEmpty() ? null : encoding;
+        }
+
+        @Nullable String etagOrNull() {
+            return etag.isEmpty() ? null : etag;
+        }
+
+        @Nullable String lastModifiedOrNull() {
+            return lastModified.isEmpty() ? null : lastModified;
+        }
+
+        /** What the page sees: the origin's validators and caching policy, immutable for hashed build output. */
+        Map<String, String> headers(boolean immutable) {
+            Map<String, String> headers = new HashMap<>();
+            if (immutable) {
+                headers.put("Cache-Control", IMMUTABLE_CACHE_CONTROL);
+            } else if (!cacheControl.isEmpty()) {
+                headers.put("Cache-Control", cacheControl);
+            }
+            if (!etag.isEmpty()) headers.put("ETag", etag);
+            if (!lastModified.isEmpty()) headers.put("Last-Modified", lastModified);
+            return headers;
+        }
+    }
+
+    /**
+     * The network body as handed to the WebView. Once teeTo() is called every byte
+     * read is also written to a temp file, which becomes the cache entry only if
+     * the body was read to the end; a failed disk write just stops the copy.
+     * Closing disconnects the connection.
+     */
+    private final class PassThroughStream extends FilterInputStream {
+        private final HttpURLConnection connection;
+        @Nullable private File tmp;
+        @Nullable private File target;
+        @Nullable private DataOutputStream copy;
+        private boolean complete;
+
+        PassThroughStream(InputStream body, HttpURLConnection connection) {
+            super(body);
+            this.connection = connection;
+        }
+
+        void teeTo(String url, Meta meta) {
+            if (!disk.ensureDir()) return;
+            target = disk.file(url);
+            tmp = disk.tempFor(target);
+            try {
+                copy = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+                writeHeader(copy, url, meta);
+            } catch (IOException e) {
+                abandonCopy();
+            }
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b == -1) {
+                complete = true;
+            } else if (copy != null) {
+                try {
+                    copy.write(b);
+                } catch (IOException e) {
+                    abandonCopy();
+                }
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n == -1) {
+                complete = true;
+            } else if (copy != null) {
+                try {
+                    copy.write(b, off, n);
+                } catch (IOException e) {
+                    abandonCopy();
+                }
+            }
+            return n;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                connection.disconnect();
+                if (copy != null) {
+                    try {
+                        copy.close();
+                        if (complete) {
+                            disk.commit(tmp, target);
+                        } else {
+                            tmp.delete();
+                        }
+                    } catch (IOException e) {
+                        tmp.delete();
+                    }
+                    copy = null;
+                }
+            }
+        }
+
+        private void abandonCopy() {
+            if (copy != null) {
+                try {
+                    copy.close();
+                } catch (IOException ignored) {
+                }
+                copy = null;
+            }
+            if (tmp != null) tmp.delete();
+        }
+    }
+
+    private static String nonNull(@Nullable String value) {
+        return value != null ? value : "";
+    }
+
+    private static String stripTrailingSlash(String origin) {
+        return origin.endsWith("/") ? origin.substring(0, origin.length() - 1) : origin;
+    }
+}